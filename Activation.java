@@ -0,0 +1,430 @@
+/*
+ * The activation function of a network layer, which turns the layer's dot products into its activations, and
+ * turns the differences between the targets and the outputs of an output layer into its psi values.
+ *
+ * Most activations are Elementwise: each activation depends only on its own dot product, and the function and
+ * its derivative are defined for a single value. Softmax depends on the whole layer, so it implements only the
+ * layer-wide methods and cannot be applied to one value or used on a hidden layer, whose psi values need the
+ * derivative of each activation by itself.
+ *
+ * Activations are looked up by the names used in the control file:
+ *    sigmoid           1 / (1 + e^(-x))
+ *    tanh              the hyperbolic tangent
+ *    relu              max(0, x)
+ *    leakyRelu         x for positive x, LEAKY_SLOPE * x otherwise
+ *    softmax           e^(x[i]) / sum of e^(x[j]) over the layer, for the output layer only
+ *    rationalSigmoid   a piecewise-rational approximation of the sigmoid, within 0.012 of it
+ *    lookupSigmoid     the sigmoid interpolated from a SigmoidTable, within 1e-6 of it by default
+ *
+ * When the control file configures a sigmoid lookup table, sigmoid layers read it as well.
+ * ----------------------------------
+ * METHODS:
+ *
+ * public void applyLayer(double[] x, double[] y, int offset, int length)
+ * public void applyLayer(float[] x, float[] y, int offset, int length)
+ * public void outputPsi(double[] y, double[] psi, int offset, int length)
+ * public void outputPsi(float[] y, float[] psi, int offset, int length)
+ * public static Activation forName(String name)
+ * public static Activation forName(String name, SigmoidTable table)
+ */
+public interface Activation
+{
+   /*
+    * The slope of the leaky ReLU function for negative inputs
+    */
+   public static final double LEAKY_SLOPE = 0.01;
+
+   /*
+    * Computes the activation function for a run of dot products of one layer
+    *
+    * @param x        the dot products
+    * @param y        receives the activations, which may be the same array as x
+    * @param offset   the index of the first dot product in x and of the first activation in y
+    * @param length   the number of dot products
+    */
+   public void applyLayer(double[] x, double[] y, int offset, int length);
+
+   /*
+    * Computes the activation function for a run of single precision dot products of one layer
+    *
+    * @param x        the dot products
+    * @param y        receives the activations, which may be the same array as x
+    * @param offset   the index of the first dot product in x and of the first activation in y
+    * @param length   the number of dot products
+    */
+   public void applyLayer(float[] x, float[] y, int offset, int length);
+
+   /*
+    * Turns the differences between the targets and the outputs of an output layer using this activation into
+    * its psi values
+    *
+    * @param y        the activations of the output layer
+    * @param psi      holds the target minus the output for each activation, and receives the psi values
+    * @param offset   the index of the layer's first activation in y and psi
+    * @param length   the number of activations in the layer
+    */
+   public void outputPsi(double[] y, double[] psi, int offset, int length);
+
+   /*
+    * Turns the differences between the targets and the single precision outputs of an output layer into its
+    * psi values, as outputPsi does for double precision
+    *
+    * @param y        the activations of the output layer
+    * @param psi      holds the target minus the output for each activation, and receives the psi values
+    * @param offset   the index of the layer's first activation in y and psi
+    * @param length   the number of activations in the layer
+    */
+   public void outputPsi(float[] y, float[] psi, int offset, int length);
+
+   /*
+    * An activation in which each activation depends only on its own dot product. The layer-wide methods apply
+    * the function to each dot product and multiply each difference by the derivative at its output.
+    * ----------------------------------
+    * METHODS:
+    *
+    * public double apply(double x)
+    * public double derivativeFromOutput(double y)
+    */
+   public interface Elementwise extends Activation
+   {
+      /*
+       * Computes the activation function
+       *
+       * @param x   the dot product of a layer's inputs and weights
+       * @return    the activation value
+       */
+      public double apply(double x);
+
+      /*
+       * Computes the derivative of the activation function at the point where it produced a given output
+       *
+       * @param y   an output of the activation function, f(x)
+       * @return    the derivative f'(x)
+       */
+      public double derivativeFromOutput(double y);
+
+      public default void applyLayer(double[] x, double[] y, int offset, int length)
+      {
+         for (int i = offset; i < offset + length; i++)
+         {
+            y[i] = apply(x[i]);
+         }
+      }
+
+      public default void applyLayer(float[] x, float[] y, int offset, int length)
+      {
+         for (int i = offset; i < offset + length; i++)
+         {
+            y[i] = (float) apply(x[i]);
+         }
+      }
+
+      public default void outputPsi(double[] y, double[] psi, int offset, int length)
+      {
+         for (int i = offset; i < offset + length; i++)
+         {
+            psi[i] = psi[i] * derivativeFromOutput(y[i]);
+         }
+      }
+
+      public default void outputPsi(float[] y, float[] psi, int offset, int length)
+      {
+         for (int i = offset; i < offset + length; i++)
+         {
+            psi[i] = (float) (psi[i] * derivativeFromOutput(y[i]));
+         }
+      }
+   } // public interface Elementwise extends Activation
+
+   /*
+    * Looks up an activation by the name used in the control file
+    *
+    * @param name   the name of the activation
+    * @return       a new instance of the named activation
+    * @throws IllegalArgumentException if there is no activation with the given name
+    */
+   public static Activation forName(String name)
+   {
+      switch (name)
+      {
+         case "sigmoid":
+            return new Sigmoid();
+         case "tanh":
+            return new Tanh();
+         case "relu":
+            return new Relu();
+         case "leakyRelu":
+            return new LeakyRelu();
+         case "softmax":
+            return new Softmax();
+         case "rationalSigmoid":
+            return new RationalSigmoid();
+         case "lookupSigmoid":
+            return new LookupSigmoid(SigmoidTable.DEFAULT);
+         default:
+            throw new IllegalArgumentException("Unknown activation function: " + name);
+      }
+   } // public static Activation forName(String name)
+
+   /*
+    * Looks up an activation by the name used in the control file, with the sigmoid of both sigmoid and
+    * lookupSigmoid layers read from the given table when there is one
+    *
+    * @param name    the name of the activation
+    * @param table   the sigmoid lookup table configured for the network, or null for exact sigmoids
+    * @return        a new instance of the named activation
+    */
+   public static Activation forName(String name, SigmoidTable table)
+   {
+      if (table != null && (name.equals("sigmoid") || name.equals("lookupSigmoid")))
+      {
+         return new LookupSigmoid(table);
+      }
+      return forName(name);
+   } // public static Activation forName(String name, SigmoidTable table)
+
+   /*
+    * The sigmoid function, f(x) = 1 / (1 + e^(-x)), whose derivative is f(x) * (1 - f(x))
+    */
+   public static class Sigmoid implements Activation.Elementwise
+   {
+      public double apply(double x)
+      {
+         return 1.0 / (1.0 + Math.exp(-x));
+      }
+
+      public double derivativeFromOutput(double y)
+      {
+         return y * (1.0 - y);
+      }
+
+      public void applyLayer(double[] x, double[] y, int offset, int length)
+      {
+         for (int i = offset; i < offset + length; i++)
+         {
+            y[i] = 1.0 / (1.0 + Math.exp(-x[i]));
+         }
+      }
+   } // public static class Sigmoid implements Activation.Elementwise
+
+   /*
+    * The hyperbolic tangent, whose derivative is 1 - f(x)^2
+    */
+   public static class Tanh implements Activation.Elementwise
+   {
+      public double apply(double x)
+      {
+         return Math.tanh(x);
+      }
+
+      public double derivativeFromOutput(double y)
+      {
+         return 1.0 - y * y;
+      }
+
+      public void applyLayer(double[] x, double[] y, int offset, int length)
+      {
+         for (int i = offset; i < offset + length; i++)
+         {
+            y[i] = Math.tanh(x[i]);
+         }
+      }
+   } // public static class Tanh implements Activation.Elementwise
+
+   /*
+    * The rectified linear function, f(x) = max(0, x), whose derivative is 1 where the output is positive and 0
+    * elsewhere
+    */
+   public static class Relu implements Activation.Elementwise
+   {
+      public double apply(double x)
+      {
+         return x > 0.0 ? x : 0.0;
+      }
+
+      public double derivativeFromOutput(double y)
+      {
+         return y > 0.0 ? 1.0 : 0.0;
+      }
+
+      public void applyLayer(double[] x, double[] y, int offset, int length)
+      {
+         for (int i = offset; i < offset + length; i++)
+         {
+            y[i] = x[i] > 0.0 ? x[i] : 0.0;
+         }
+      }
+   } // public static class Relu implements Activation.Elementwise
+
+   /*
+    * The leaky rectified linear function, which keeps a slope of LEAKY_SLOPE for negative inputs so those
+    * activations still learn
+    */
+   public static class LeakyRelu implements Activation.Elementwise
+   {
+      public double apply(double x)
+      {
+         return x > 0.0 ? x : LEAKY_SLOPE * x;
+      }
+
+      public double derivativeFromOutput(double y)
+      {
+         return y > 0.0 ? 1.0 : LEAKY_SLOPE;
+      }
+
+      public void applyLayer(double[] x, double[] y, int offset, int length)
+      {
+         for (int i = offset; i < offset + length; i++)
+         {
+            y[i] = x[i] > 0.0 ? x[i] : LEAKY_SLOPE * x[i];
+         }
+      }
+   } // public static class LeakyRelu implements Activation.Elementwise
+
+   /*
+    * The softmax function, which turns a whole output layer into values between 0 and 1 that sum to 1. The
+    * largest dot product is subtracted before exponentiating so that large dot products cannot overflow. Since
+    * every output depends on every dot product, it has no single-value form, and its psi values use the full
+    * Jacobian, psi[i] = y[i] * (omega[i] - sum of omega[j] * y[j]).
+    */
+   public static class Softmax implements Activation
+   {
+      public void applyLayer(double[] x, double[] y, int offset, int length)
+      {
+         double max = Double.NEGATIVE_INFINITY;
+         for (int i = offset; i < offset + length; i++)
+         {
+            max = Math.max(max, x[i]);
+         }
+
+         double sum = 0.0;
+         for (int i = offset; i < offset + length; i++)
+         {
+            y[i] = Math.exp(x[i] - max);
+            sum += y[i];
+         }
+
+         for (int i = offset; i < offset + length; i++)
+         {
+            y[i] /= sum;
+         }
+      } // public void applyLayer(double[] x, double[] y, int offset, int length)
+
+      public void applyLayer(float[] x, float[] y, int offset, int length)
+      {
+         double max = Double.NEGATIVE_INFINITY;
+         for (int i = offset; i < offset + length; i++)
+         {
+            max = Math.max(max, x[i]);
+         }
+
+         double sum = 0.0;
+         for (int i = offset; i < offset + length; i++)
+         {
+            sum += Math.exp(x[i] - max);
+         }
+
+         for (int i = offset; i < offset + length; i++)
+         {
+            y[i] = (float) (Math.exp(x[i] - max) / sum);
+         }
+      } // public void applyLayer(float[] x, float[] y, int offset, int length)
+
+      public void outputPsi(double[] y, double[] psi, int offset, int length)
+      {
+         double weightedOmega = 0.0;
+         for (int i = offset; i < offset + length; i++)
+         {
+            weightedOmega += psi[i] * y[i];
+         }
+
+         for (int i = offset; i < offset + length; i++)
+         {
+            psi[i] = y[i] * (psi[i] - weightedOmega);
+         }
+      } // public void outputPsi(double[] y, double[] psi, int offset, int length)
+
+      public void outputPsi(float[] y, float[] psi, int offset, int length)
+      {
+         double weightedOmega = 0.0;
+         for (int i = offset; i < offset + length; i++)
+         {
+            weightedOmega += psi[i] * y[i];
+         }
+
+         for (int i = offset; i < offset + length; i++)
+         {
+            psi[i] = (float) (y[i] * (psi[i] - weightedOmega));
+         }
+      } // public void outputPsi(float[] y, float[] psi, int offset, int length)
+   } // public static class Softmax implements Activation
+
+   /*
+    * A fast approximation of the sigmoid built from the rational approximation of the hyperbolic tangent
+    * tanh(z) ~ z * (27 + z^2) / (27 + 9 * z^2), which reaches exactly 1 at z = 3 and is held at +-1 beyond it.
+    * Since sigmoid(x) = (1 + tanh(x / 2)) / 2, the result is within 0.012 of the sigmoid everywhere and uses
+    * no exponential. The derivative is the sigmoid's, y * (1 - y).
+    */
+   public static class RationalSigmoid implements Activation.Elementwise
+   {
+      public double apply(double x)
+      {
+         double z = 0.5 * x;
+         if (z >= 3.0)
+         {
+            return 1.0;
+         }
+         if (z <= -3.0)
+         {
+            return 0.0;
+         }
+         double zSquared = z * z;
+         return 0.5 + 0.5 * z * (27.0 + zSquared) / (27.0 + 9.0 * zSquared);
+      } // public double apply(double x)
+
+      public double derivativeFromOutput(double y)
+      {
+         return y * (1.0 - y);
+      }
+
+      public void applyLayer(double[] x, double[] y, int offset, int length)
+      {
+         for (int i = offset; i < offset + length; i++)
+         {
+            y[i] = apply(x[i]);
+         }
+      }
+   } // public static class RationalSigmoid implements Activation.Elementwise
+
+   /*
+    * The sigmoid read from a SigmoidTable with linear interpolation. Since training takes the derivative from
+    * the outputs, only the table of sigmoid values is used.
+    */
+   public static class LookupSigmoid implements Activation.Elementwise
+   {
+      public SigmoidTable table;
+
+      public LookupSigmoid(SigmoidTable table)
+      {
+         this.table = table;
+      }
+
+      public double apply(double x)
+      {
+         return table.sigmoid(x);
+      }
+
+      public double derivativeFromOutput(double y)
+      {
+         return y * (1.0 - y);
+      }
+
+      public void applyLayer(double[] x, double[] y, int offset, int length)
+      {
+         for (int i = offset; i < offset + length; i++)
+         {
+            y[i] = table.sigmoid(x[i]);
+         }
+      }
+   } // public static class LookupSigmoid implements Activation.Elementwise
+} // public interface Activation
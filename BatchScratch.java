@@ -0,0 +1,48 @@
+/*
+ * Holds the working arrays used to run a mini-batch of cases through an N_Layer network at once.
+ * The values of every case in the batch are stored row by row in one array per layer, so the value of
+ * activation k of layer n for the b-th case in the batch is at index b * numActivations[n] + k.
+ * ----------------------------------
+ * VARIABLES:
+ *
+ * int capacity                  //The largest number of cases the batch can hold
+ * double[][] activations        //The activation values of each layer for every case in the batch
+ * double[][] theta              //The dot products of each layer for every case in the batch
+ * double[][] psi                //The psi values of each layer for every case in the batch
+ * double[] gradients            //The accumulated change in each weight over the batch, in the same layout as the weights
+ *
+ * METHODS:
+ *
+ * public BatchScratch(int[] numActivations, int numLayers, int capacity, int numWeights)
+ */
+public class BatchScratch
+{
+   public int capacity;
+   public double[][] activations;
+   public double[][] theta;
+   public double[][] psi;
+   public double[] gradients;
+
+   /*
+    * Allocates the arrays for a batch of the given size
+    *
+    * @param numActivations   the number of activations in each layer of the network
+    * @param numLayers        the number of connectivity layers in the network
+    * @param capacity         the largest number of cases the batch can hold
+    * @param numWeights       the total number of weights in the network
+    */
+   public BatchScratch(int[] numActivations, int numLayers, int capacity, int numWeights)
+   {
+      this.capacity = capacity;
+      activations = new double[numLayers + 1][];
+      theta = new double[numLayers + 1][];
+      psi = new double[numLayers + 1][];
+      for (int n = 0; n <= numLayers; n++)
+      {
+         activations[n] = new double[capacity * numActivations[n]];
+         theta[n] = new double[n == 0 ? 0 : capacity * numActivations[n]];
+         psi[n] = new double[n == 0 ? 0 : capacity * numActivations[n]];
+      }
+      gradients = new double[numWeights];
+   } // public BatchScratch(int[] numActivations, int numLayers, int capacity, int numWeights)
+} // public class BatchScratch
@@ -0,0 +1,321 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/*
+ * Reads a text case file into a truth table without Scanner. The file is mapped and split into chunks at line
+ * boundaries, and the chunks are parsed in parallel on the common fork/join pool. The values are whitespace-
+ * separated as before, so a case may still span lines: a first pass counts the values in each chunk to find the
+ * index of its first value, and a second pass parses them into place.
+ *
+ * Plain decimal values with at most 18 significant digits whose mantissa and power of ten are both exactly
+ * representable are converted with one correctly rounded multiply or divide, Clinger's fast path, which gives
+ * the same double as Double.parseDouble. Every other value is handed to Double.parseDouble, so the table holds
+ * exactly what Scanner.nextDouble produced.
+ * ----------------------------------
+ * METHODS:
+ *
+ * public static void parse(String fileName, double[][] table, int numCases, int width) throws IOException
+ * public static int[] chunkBounds(ByteBuffer bytes, int numChunks)
+ * public static long countValues(ByteBuffer bytes, int start, int end)
+ * public static String parseChunk(ByteBuffer bytes, int start, int end, long firstValue, double[][] table, int width)
+ * public static double parseValue(ByteBuffer bytes, int start, int end)
+ */
+public class CaseParser
+{
+   /*
+    * The smallest chunk worth handing to another thread
+    */
+   public static final int MIN_CHUNK_BYTES = 1 << 16;
+
+   /*
+    * The powers of ten that are exactly representable as doubles
+    */
+   private static final double[] POWERS_OF_TEN =
+   {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+   };
+
+   /*
+    * Reads the cases of a text case file into a truth table
+    *
+    * @param fileName   the case file
+    * @param table      receives the values, one row per case
+    * @param numCases   the number of cases to read
+    * @param width      the number of values in each case
+    * @throws IOException if a value is malformed or the file holds too few values, naming the case and column
+    */
+   public static void parse(String fileName, double[][] table, int numCases, int width) throws IOException
+   {
+      ByteBuffer bytes;
+      try (FileChannel channel = FileChannel.open(new File(fileName).toPath()))
+      {
+         bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+
+      int numChunks = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, bytes.limit() / MIN_CHUNK_BYTES));
+      int[] bounds = chunkBounds(bytes, numChunks);
+      numChunks = bounds.length - 1;
+
+      long[] firstValues = new long[numChunks + 1];
+      String[] errors = new String[numChunks];
+      if (numChunks == 1)
+      {
+         errors[0] = parseChunk(bytes, 0, bounds[1], 0, table, width);
+         firstValues[1] = countValues(bytes, 0, bounds[1]);
+      }
+      else
+      {
+         ForkJoinPool pool = ForkJoinPool.commonPool();
+         ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[numChunks];
+         long[] counts = new long[numChunks];
+         for (int c = 0; c < numChunks; c++)
+         {
+            final int chunk = c;
+            tasks[c] = pool.submit(() ->
+            {
+               counts[chunk] = countValues(bytes, bounds[chunk], bounds[chunk + 1]);
+            });
+         }
+         for (int c = 0; c < numChunks; c++)
+         {
+            tasks[c].join();
+            firstValues[c + 1] = firstValues[c] + counts[c];
+         }
+
+         for (int c = 0; c < numChunks; c++)
+         {
+            final int chunk = c;
+            tasks[c] = pool.submit(() ->
+            {
+               errors[chunk] = parseChunk(bytes, bounds[chunk], bounds[chunk + 1], firstValues[chunk], table, width);
+            });
+         }
+         for (int c = 0; c < numChunks; c++)
+         {
+            tasks[c].join();
+         }
+      } // else
+
+      for (int c = 0; c < numChunks; c++)
+      {
+         if (errors[c] != null)
+         {
+            throw new IOException(fileName + ": " + errors[c]);
+         }
+      }
+
+      long needed = (long) numCases * width;
+      if (firstValues[numChunks] < needed)
+      {
+         long found = firstValues[numChunks];
+         throw new IOException(fileName + ": ends at case " + found / width + ", column " + found % width +
+                               "; expected " + numCases + " cases of " + width + " values");
+      }
+   } // public static void parse(String fileName, double[][] table, int numCases, int width) throws IOException
+
+   /*
+    * Splits a file into chunks of about the same size, moving each boundary forward to just past a newline so
+    * that no value is split between chunks
+    *
+    * @param bytes       the contents of the file
+    * @param numChunks   the number of chunks wanted
+    * @return            the byte offset of the start of each chunk followed by the end of the file; chunks that
+    *                    would be empty are dropped
+    */
+   public static int[] chunkBounds(ByteBuffer bytes, int numChunks)
+   {
+      int size = bytes.limit();
+      int[] bounds = new int[numChunks + 1];
+      int count = 1;
+      for (int c = 1; c < numChunks; c++)
+      {
+         int bound = Math.max((int) ((long) size * c / numChunks), bounds[count - 1]);
+         while (bound < size && bytes.get(bound - 1) != '\n')
+         {
+            bound++;
+         }
+         if (bound > bounds[count - 1] && bound < size)
+         {
+            bounds[count++] = bound;
+         }
+      } // for (int c = 1; c < numChunks; c++)
+      bounds[count++] = size;
+      return Arrays.copyOf(bounds, count);
+   } // public static int[] chunkBounds(ByteBuffer bytes, int numChunks)
+
+   /*
+    * Counts the whitespace-separated values in part of a file
+    *
+    * @param bytes   the contents of the file
+    * @param start   the offset of the first byte of the chunk
+    * @param end     the offset just past the last byte of the chunk
+    * @return        the number of values that start in the chunk
+    */
+   public static long countValues(ByteBuffer bytes, int start, int end)
+   {
+      long count = 0;
+      boolean inValue = false;
+      for (int i = start; i < end; i++)
+      {
+         boolean space = bytes.get(i) <= ' ';
+         if (!space && !inValue)
+         {
+            count++;
+         }
+         inValue = !space;
+      }
+      return count;
+   } // public static long countValues(ByteBuffer bytes, int start, int end)
+
+   /*
+    * Parses the values in part of a file into their places in the truth table. Values past the end of the table
+    * are ignored, as Scanner left them unread.
+    *
+    * @param bytes        the contents of the file
+    * @param start        the offset of the first byte of the chunk
+    * @param end          the offset just past the last byte of the chunk
+    * @param firstValue   the index in the whole file of the first value in the chunk
+    * @param table        receives the values, one row per case
+    * @param width        the number of values in each case
+    * @return             a description of the first malformed value, or null if there is none
+    */
+   public static String parseChunk(ByteBuffer bytes, int start, int end, long firstValue, double[][] table, int width)
+   {
+      long index = firstValue;
+      long limit = (long) table.length * width;
+      int i = start;
+      while (i < end && index < limit)
+      {
+         while (i < end && bytes.get(i) <= ' ')
+         {
+            i++;
+         }
+         if (i == end)
+         {
+            break;
+         }
+         int valueStart = i;
+         while (i < end && bytes.get(i) > ' ')
+         {
+            i++;
+         }
+
+         int r = (int) (index / width);
+         int c = (int) (index % width);
+         try
+         {
+            table[r][c] = parseValue(bytes, valueStart, i);
+         }
+         catch (NumberFormatException e)
+         {
+            byte[] text = new byte[Math.min(i - valueStart, 64)];
+            bytes.get(valueStart, text);
+            return "malformed value \"" + new String(text, StandardCharsets.US_ASCII) + "\" at case " + r +
+                   ", column " + c;
+         }
+         index++;
+      } // while (i < end && index < limit)
+      return null;
+   } // public static String parseChunk(ByteBuffer bytes, int start, int end, long firstValue, double[][] table, int width)
+
+   /*
+    * Parses one value, using Clinger's fast path when it is exact and Double.parseDouble otherwise
+    *
+    * @param bytes   the contents of the file
+    * @param start   the offset of the first character of the value
+    * @param end     the offset just past the last character of the value
+    * @return        the value, equal to Double.parseDouble of its text
+    * @throws NumberFormatException if the text is not a number
+    */
+   public static double parseValue(ByteBuffer bytes, int start, int end)
+   {
+      int i = start;
+      boolean negative = false;
+      if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+'))
+      {
+         negative = bytes.get(i) == '-';
+         i++;
+      }
+
+      long mantissa = 0;
+      int significantDigits = 0;
+      int digits = 0;
+      int exponent = 0;
+      boolean seenPoint = false;
+      boolean exact = true;
+      for (; i < end; i++)
+      {
+         byte b = bytes.get(i);
+         if (b >= '0' && b <= '9')
+         {
+            digits++;
+            if (mantissa != 0 || b != '0')
+            {
+               significantDigits++;
+            }
+            if (significantDigits > 18)
+            {
+               exact = false;
+            }
+            else
+            {
+               mantissa = mantissa * 10 + (b - '0');
+            }
+            if (seenPoint)
+            {
+               exponent--;
+            }
+         } // if (b >= '0' && b <= '9')
+         else if (b == '.' && !seenPoint)
+         {
+            seenPoint = true;
+         }
+         else
+         {
+            break;
+         }
+      } // for (; i < end; i++)
+
+      if (i < end && digits > 0 && (bytes.get(i) == 'e' || bytes.get(i) == 'E'))
+      {
+         int j = i + 1;
+         boolean negativeExponent = false;
+         if (j < end && (bytes.get(j) == '-' || bytes.get(j) == '+'))
+         {
+            negativeExponent = bytes.get(j) == '-';
+            j++;
+         }
+         int explicit = 0;
+         int exponentDigits = 0;
+         for (; j < end && bytes.get(j) >= '0' && bytes.get(j) <= '9'; j++)
+         {
+            explicit = Math.min(explicit * 10 + (bytes.get(j) - '0'), 100000);
+            exponentDigits++;
+         }
+         if (exponentDigits > 0)
+         {
+            exponent += negativeExponent ? -explicit : explicit;
+            i = j;
+         }
+      } // if (i < end && digits > 0 && (bytes.get(i) == 'e' || bytes.get(i) == 'E'))
+
+      if (exact && digits > 0 && i == end && mantissa < (1L << 53) &&
+          exponent >= -22 && exponent <= 22)
+      {
+         double value = mantissa;
+         value = exponent < 0 ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+         return negative ? -value : value;
+      }
+
+      byte[] text = new byte[end - start];
+      bytes.get(start, text);
+      return Double.parseDouble(new String(text, StandardCharsets.US_ASCII));
+   } // public static double parseValue(ByteBuffer bytes, int start, int end)
+} // public class CaseParser
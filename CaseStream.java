@@ -0,0 +1,267 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Streams the cases of a binary dataset through a fixed set of truth table rows, so that training memory does
+ * not depend on the number of cases. The dataset is read front to back one window of windowCases cases at a time.
+ * Each window is mapped on its own, and while the network works through one window, the next is mapped and
+ * paged in on a background thread. At most two windows are mapped at once.
+ *
+ * Shuffling happens within the rows: they are filled with the first cases, and each call to next hands out a
+ * random row, which is refilled with the next case from disk on the following call. Once the dataset is exhausted
+ * the rows drain in random order. A case can therefore move at most rows.length places earlier than its position
+ * in the file, so datasets stored in class order should be shuffled once when they are written.
+ * ----------------------------------
+ * VARIABLES:
+ *
+ * DatasetFile dataset           //The header of the streamed dataset
+ * File file                     //The dataset file
+ * int numCases                  //The number of cases streamed each pass
+ * double[][] rows               //The truth table rows cases are streamed into
+ * int windowCases               //The number of cases mapped at once
+ * int capacity                  //The number of rows in use during the current pass
+ * int filled                    //The number of rows holding cases not yet handed out
+ * int pendingRow                //The row handed out by the last call to next, or -1
+ * long nextCase                 //The next case to read from disk
+ * boolean shuffle               //Whether the current pass hands rows out in random order
+ * Random random                 //Chooses the row to hand out
+ * long windowStart              //The first case of the current window
+ * long windowEnd                //The case just past the current window
+ * MappedByteBuffer windowInputs //The inputs of the current window
+ * MappedByteBuffer windowTargets //The targets of the current window
+ * Future<MappedByteBuffer[]> readAhead //The next window, being mapped in the background
+ * long readAheadStart           //The first case of the window being mapped in the background
+ * ExecutorService reader        //The background thread that maps windows ahead
+ *
+ * METHODS:
+ *
+ * public CaseStream(File file, int numCases, double[][] rows, int windowCases, int inputs, int outputs) throws IOException
+ * public void start(boolean shuffle)
+ * public int next()
+ * public void readCase(long caseIndex, double[] row)
+ * public Future<MappedByteBuffer[]> mapAhead(long start)
+ * public MappedByteBuffer[] mapWindow(long start) throws IOException
+ * public void close()
+ */
+public class CaseStream
+{
+   public DatasetFile dataset;
+   public File file;
+   public int numCases;
+   public double[][] rows;
+   public int windowCases;
+   public int capacity;
+   public int filled;
+   public int pendingRow;
+   public long nextCase;
+   public boolean shuffle;
+   public Random random;
+   public long windowStart;
+   public long windowEnd;
+   public MappedByteBuffer windowInputs;
+   public MappedByteBuffer windowTargets;
+   public Future<MappedByteBuffer[]> readAhead;
+   public long readAheadStart;
+   public ExecutorService reader;
+
+   /*
+    * Opens a binary dataset for streaming
+    *
+    * @param file          the dataset file
+    * @param numCases      the number of cases to stream each pass, from the start of the dataset
+    * @param rows          the truth table rows to stream cases into, which also sets the shuffle buffer size
+    * @param windowCases   the number of cases to map at once
+    * @param inputs        the number of inputs of the network
+    * @param outputs       the number of outputs of the network
+    * @throws IOException if the file is not a binary dataset or does not fit the network
+    * @throws IllegalArgumentException if a window would not fit in one mapping
+    */
+   public CaseStream(File file, int numCases, double[][] rows, int windowCases, int inputs, int outputs) throws IOException
+   {
+      dataset = DatasetFile.readHeader(file);
+      dataset.checkShape(numCases, inputs, outputs);
+      if ((long) windowCases * dataset.inputCaseBytes() > Integer.MAX_VALUE || windowCases < 1)
+      {
+         throw new IllegalArgumentException("A window of " + windowCases + " cases cannot be mapped at once");
+      }
+      this.file = file;
+      this.numCases = numCases;
+      this.rows = rows;
+      this.windowCases = windowCases;
+      random = new Random();
+      reader = Executors.newSingleThreadExecutor(task ->
+      {
+         Thread thread = new Thread(task, "case-stream-reader");
+         thread.setDaemon(true);
+         return thread;
+      });
+      windowStart = -1;
+      windowEnd = -1;
+   } // public CaseStream(File file, int numCases, double[][] rows, int windowCases, int inputs, int outputs) throws IOException
+
+   /*
+    * Begins a pass over the dataset from its first case, filling the rows
+    *
+    * @param shuffle   whether to hand out the cases in random order within the rows, or in file order using
+    *                  only the first row
+    */
+   public void start(boolean shuffle)
+   {
+      this.shuffle = shuffle;
+      capacity = shuffle ? rows.length : 1;
+      nextCase = 0;
+      filled = 0;
+      pendingRow = -1;
+      while (filled < capacity && nextCase < numCases)
+      {
+         readCase(nextCase++, rows[filled++]);
+      }
+   } // public void start(boolean shuffle)
+
+   /*
+    * Hands out the next case of the pass. The row handed out before is refilled first, so a row stays valid
+    * until the following call.
+    *
+    * @return   the index of the row holding the case, or -1 once every case of the pass has been handed out
+    * @throws UncheckedIOException if a window of the dataset cannot be mapped
+    */
+   public int next()
+   {
+      if (pendingRow >= 0)
+      {
+         if (nextCase < numCases)
+         {
+            readCase(nextCase++, rows[pendingRow]);
+         }
+         else
+         {
+            filled--;
+            double[] row = rows[pendingRow];
+            rows[pendingRow] = rows[filled];
+            rows[filled] = row;
+         }
+         pendingRow = -1;
+      } // if (pendingRow >= 0)
+
+      if (filled == 0)
+      {
+         return -1;
+      }
+      pendingRow = shuffle ? random.nextInt(filled) : 0;
+      return pendingRow;
+   } // public int next()
+
+   /*
+    * Copies one case into a row, moving to the window holding it when needed. Reading forward into the next
+    * window takes the one mapped ahead and starts mapping the window after it, which after the last window is
+    * the first, ready for the next pass. Once the stream is closed nothing is mapped ahead.
+    *
+    * @param caseIndex   the case to read
+    * @param row         receives the inputs followed by the targets
+    * @throws UncheckedIOException if a window of the dataset cannot be mapped
+    */
+   public void readCase(long caseIndex, double[] row)
+   {
+      if (caseIndex < windowStart || caseIndex >= windowEnd)
+      {
+         long start = caseIndex / windowCases * windowCases;
+         MappedByteBuffer[] window;
+         try
+         {
+            if (readAhead != null && start == readAheadStart)
+            {
+               window = readAhead.get();
+            }
+            else
+            {
+               if (readAhead != null)
+               {
+                  readAhead.cancel(false);
+               }
+               window = mapWindow(start);
+            }
+         } // try
+         catch (IOException e)
+         {
+            throw new UncheckedIOException(e);
+         }
+         catch (InterruptedException | ExecutionException e)
+         {
+            throw new UncheckedIOException(new IOException("Reading ahead in " + file + " failed", e));
+         }
+
+         windowInputs = window[0];
+         windowTargets = window[1];
+         windowStart = start;
+         windowEnd = Math.min(start + windowCases, numCases);
+         readAheadStart = windowEnd < numCases ? windowEnd : 0;
+         readAhead = readAheadStart != windowStart && !reader.isShutdown() ? mapAhead(readAheadStart) : null;
+      } // if (caseIndex < windowStart || caseIndex >= windowEnd)
+
+      int offset = (int) (caseIndex - windowStart);
+      dataset.readCase(windowInputs, offset * dataset.inputCaseBytes(), windowTargets,
+                       offset * dataset.targetCaseBytes(), row);
+   } // public void readCase(long caseIndex, double[] row)
+
+   /*
+    * Starts mapping a window and paging it in on the background thread
+    *
+    * @param start   the first case of the window
+    * @return        the inputs and targets of the window, once they are mapped
+    */
+   public Future<MappedByteBuffer[]> mapAhead(long start)
+   {
+      return reader.submit(() ->
+      {
+         MappedByteBuffer[] window = mapWindow(start);
+         window[0].load();
+         window[1].load();
+         return window;
+      });
+   } // public Future<MappedByteBuffer[]> mapAhead(long start)
+
+   /*
+    * Maps the inputs and targets of a window of cases
+    *
+    * @param start   the first case of the window
+    * @return        the little-endian inputs and targets of the window
+    */
+   public MappedByteBuffer[] mapWindow(long start) throws IOException
+   {
+      long cases = Math.min(windowCases, numCases - start);
+      MappedByteBuffer[] window = new MappedByteBuffer[2];
+      try (FileChannel channel = FileChannel.open(file.toPath()))
+      {
+         window[0] = channel.map(FileChannel.MapMode.READ_ONLY, dataset.inputOffset + start * dataset.inputCaseBytes(),
+                                 cases * dataset.inputCaseBytes());
+         window[1] = channel.map(FileChannel.MapMode.READ_ONLY, dataset.targetOffset + start * dataset.targetCaseBytes(),
+                                 cases * dataset.targetCaseBytes());
+      }
+      window[0].order(ByteOrder.LITTLE_ENDIAN);
+      window[1].order(ByteOrder.LITTLE_ENDIAN);
+      return window;
+   } // public MappedByteBuffer[] mapWindow(long start) throws IOException
+
+   /*
+    * Stops the background thread and drops the window it mapped ahead. The stream can still be read afterwards,
+    * with every window mapped on the calling thread.
+    */
+   public void close()
+   {
+      reader.shutdownNow();
+      if (readAhead != null)
+      {
+         readAhead.cancel(false);
+         readAhead = null;
+      }
+   } // public void close()
+} // public class CaseStream
@@ -0,0 +1,328 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/*
+ * Writes checkpoints of the weights during training without making training wait for the disk. A checkpoint
+ * copies the weights into one of two snapshot buffers and hands it to a background thread, which writes it to a
+ * temporary file and renames that over the checkpoint file, so a checkpoint file is always complete. While one
+ * snapshot is being written the other can be filled and left pending. A checkpoint taken while a snapshot is
+ * still pending replaces it, so the newest checkpoint is always the one written next, and the training loop
+ * never spends longer on a checkpoint than the copy.
+ *
+ * Checkpoints are named after the save file with ".ckpt-" and the iteration appended, and are written in the
+ * network's weight format, so any of them can be loaded like a saved weight file. The rest of the training state
+ * is written beside each one, with ".state" appended, before the weights are renamed into place, so every
+ * checkpoint on disk can be resumed from. Only the newest checkpointsKept are kept, counting the checkpoints an
+ * earlier or resumed run left on disk, which are pruned, oldest first, as new ones are written.
+ * ----------------------------------
+ * VARIABLES:
+ *
+ * File baseFile                 //The save file that checkpoint names are made from
+ * int[] numActivations          //The number of activations in each layer, for binary checkpoints
+ * boolean binary                //Whether checkpoints are written in the binary weight file format
+ * int checkpointsKept           //The number of newest checkpoints kept on disk
+ * ArrayBlockingQueue<Snapshot> free //The snapshot buffers neither pending nor being written
+ * AtomicReference<Snapshot> pending //The snapshot waiting to be written, or null
+ * ExecutorService writer        //The background thread that writes snapshots
+ * ArrayDeque<File> written      //The checkpoints on disk, including those of earlier runs, oldest first
+ * int replaced                  //The number of pending checkpoints replaced by newer ones before being written
+ * IOException failure           //The first error the background thread met, reported by close
+ *
+ * METHODS:
+ *
+ * public Checkpointer(File baseFile, int[] numActivations, int numWeights, boolean useFloat, boolean binary, int checkpointsKept)
+ * public void checkpoint(double[] weights, float[] floatWeights, Supplier<TrainingState> state)
+ * public void writePending()
+ * public static File stateFile(File checkpoint)
+ * public static ArrayDeque<File> listCheckpoints(File baseFile)
+ * public void write(Snapshot snapshot) throws IOException
+ * public void close() throws IOException
+ */
+public class Checkpointer
+{
+   /*
+    * A buffer holding a copy of the weights and the training state they were taken at
+    */
+   public static class Snapshot
+   {
+      public double[] weights;
+      public float[] floatWeights;
+      public TrainingState state;
+   }
+
+   public File baseFile;
+   public int[] numActivations;
+   public boolean binary;
+   public int checkpointsKept;
+   public ArrayBlockingQueue<Snapshot> free;
+   public AtomicReference<Snapshot> pending;
+   public ExecutorService writer;
+   public ArrayDeque<File> written;
+   public int replaced;
+   public volatile IOException failure;
+
+   /*
+    * Allocates the two snapshot buffers and starts the background thread
+    *
+    * @param baseFile          the save file that checkpoint names are made from
+    * @param numActivations    the number of activations in each layer of the network
+    * @param numWeights        the number of weights in the network
+    * @param useFloat          whether the weights are stored in single precision
+    * @param binary            whether to write checkpoints in the binary weight file format instead of as text
+    * @param checkpointsKept   the number of newest checkpoints to keep on disk
+    */
+   public Checkpointer(File baseFile, int[] numActivations, int numWeights, boolean useFloat, boolean binary,
+                       int checkpointsKept)
+   {
+      this.baseFile = baseFile;
+      this.numActivations = numActivations;
+      this.binary = binary;
+      this.checkpointsKept = checkpointsKept;
+      free = new ArrayBlockingQueue<Snapshot>(2);
+      for (int b = 0; b < 2; b++)
+      {
+         Snapshot snapshot = new Snapshot();
+         if (useFloat)
+         {
+            snapshot.floatWeights = new float[numWeights];
+         }
+         else
+         {
+            snapshot.weights = new double[numWeights];
+         }
+         free.add(snapshot);
+      } // for (int b = 0; b < 2; b++)
+      pending = new AtomicReference<Snapshot>();
+
+      writer = Executors.newSingleThreadExecutor(task ->
+      {
+         Thread thread = new Thread(task, "checkpoint-writer");
+         thread.setDaemon(true);
+         return thread;
+      });
+      written = listCheckpoints(baseFile);
+   } // public Checkpointer(File baseFile, int[] numActivations, int numWeights, boolean useFloat, boolean binary, int checkpointsKept)
+
+   /*
+    * Copies the weights into a snapshot buffer and leaves it pending for the background thread. The buffer is a
+    * free one, or else the one already pending, whose older checkpoint is replaced. Only once a buffer is in
+    * hand is the training state captured.
+    *
+    * @param weights        the double precision weights, or null when training in single precision
+    * @param floatWeights   the single precision weights, or null when training in double precision
+    * @param state          captures the rest of the training state, which the checkpoint keeps
+    */
+   public void checkpoint(double[] weights, float[] floatWeights, Supplier<TrainingState> state)
+   {
+      Snapshot snapshot = free.poll();
+      if (snapshot == null)
+      {
+         snapshot = pending.getAndSet(null);
+         if (snapshot != null)
+         {
+            replaced++;
+         }
+         else
+         {
+            /*
+             * The background thread took the pending snapshot between the two calls, which it only does after
+             * returning the one it had written, so that one is free now
+             */
+            snapshot = free.poll();
+         }
+      } // if (snapshot == null)
+
+      if (snapshot.weights != null)
+      {
+         System.arraycopy(weights, 0, snapshot.weights, 0, weights.length);
+      }
+      else
+      {
+         System.arraycopy(floatWeights, 0, snapshot.floatWeights, 0, floatWeights.length);
+      }
+      snapshot.state = state.get();
+
+      Snapshot superseded = pending.getAndSet(snapshot);
+      if (superseded != null)
+      {
+         replaced++;
+         free.add(superseded);
+      }
+      writer.execute(this::writePending);
+   } // public void checkpoint(double[] weights, float[] floatWeights, Supplier<TrainingState> state)
+
+   /*
+    * Takes the pending snapshot, if a newer checkpoint has not already taken it back, writes it and returns its
+    * buffer. Runs on the background thread, once for each checkpoint.
+    */
+   public void writePending()
+   {
+      Snapshot snapshot = pending.getAndSet(null);
+      if (snapshot == null)
+      {
+         return;
+      }
+
+      try
+      {
+         write(snapshot);
+      }
+      catch (IOException e)
+      {
+         if (failure == null)
+         {
+            failure = e;
+         }
+      }
+      finally
+      {
+         free.add(snapshot);
+      }
+   } // public void writePending()
+
+   /*
+    * Writes a snapshot's training state and then its weights, each to a temporary file renamed into place, and 
+    * deletes the checkpoints past the newest checkpointsKept. Runs on the background thread.
+    *
+    * @param snapshot   the snapshot to write
+    */
+   public void write(Snapshot snapshot) throws IOException
+   {
+      FlightEvents.WeightCheckpoint event = new FlightEvents.WeightCheckpoint();
+      event.begin();
+      File target = new File(baseFile.getPath() + ".ckpt-" + snapshot.state.iteration);
+      File temporary = new File(target.getPath() + ".tmp");
+      File stateTemporary = new File(stateFile(target).getPath() + ".tmp");
+
+      snapshot.state.write(stateTemporary);
+      Files.move(stateTemporary.toPath(), stateFile(target).toPath(), StandardCopyOption.ATOMIC_MOVE,
+                 StandardCopyOption.REPLACE_EXISTING);
+
+      if (binary)
+      {
+         if (snapshot.weights != null)
+         {
+            WeightFile.write(temporary, numActivations, snapshot.weights);
+         }
+         else
+         {
+            WeightFile.write(temporary, numActivations, snapshot.floatWeights);
+         }
+      } // if (binary)
+      else
+      {
+         try (BufferedWriter out = new BufferedWriter(new FileWriter(temporary)))
+         {
+            if (snapshot.weights != null)
+            {
+               for (int w = 0; w < snapshot.weights.length; w++)
+               {
+                  out.write(snapshot.weights[w] + " ");
+               }
+            }
+            else
+            {
+               for (int w = 0; w < snapshot.floatWeights.length; w++)
+               {
+                  out.write(snapshot.floatWeights[w] + " ");
+               }
+            }
+         } // try (BufferedWriter out = new BufferedWriter(new FileWriter(temporary)))
+      } // else
+
+      Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                 StandardCopyOption.REPLACE_EXISTING);
+      if (event.shouldCommit())
+      {
+         event.iteration = snapshot.state.iteration;
+         event.path = target.getPath();
+         event.bytes = target.length() + stateFile(target).length();
+         event.commit();
+      }
+      written.remove(target);
+      written.addLast(target);
+      while (written.size() > checkpointsKept)
+      {
+         File oldest = written.removeFirst();
+         Files.deleteIfExists(oldest.toPath());
+         Files.deleteIfExists(stateFile(oldest).toPath());
+      }
+   } // public void write(Snapshot snapshot) throws IOException
+
+   /*
+    * Names the training state file kept beside a checkpoint
+    *
+    * @param checkpoint   the checkpoint's weight file
+    * @return             the checkpoint's state file
+    */
+   public static File stateFile(File checkpoint)
+   {
+      return new File(checkpoint.getPath() + ".state");
+   }
+
+   /*
+    * Finds the checkpoints of a save file already on disk. A checkpoint whose weights were never renamed into
+    * place is found by its training state, so that it is deleted with the rest.
+    *
+    * @param baseFile   the save file that checkpoint names are made from
+    * @return           the checkpoints' weight files, in order of iteration
+    */
+   public static ArrayDeque<File> listCheckpoints(File baseFile)
+   {
+      File directory = baseFile.getAbsoluteFile().getParentFile();
+      String prefix = baseFile.getName() + ".ckpt-";
+      TreeMap<Integer, File> found = new TreeMap<Integer, File>();
+      String[] names = directory.list();
+      for (int i = 0; names != null && i < names.length; i++)
+      {
+         if (!names[i].startsWith(prefix))
+         {
+            continue;
+         }
+         String suffix = names[i].substring(prefix.length());
+         if (suffix.endsWith(".state"))
+         {
+            suffix = suffix.substring(0, suffix.length() - ".state".length());
+         }
+         if (suffix.matches("\\d{1,9}"))
+         {
+            found.put(Integer.parseInt(suffix), new File(baseFile.getPath() + ".ckpt-" + suffix));
+         }
+      } // for (int i = 0; names != null && i < names.length; i++)
+      return new ArrayDeque<File>(found.values());
+   } // public static ArrayDeque<File> listCheckpoints(File baseFile)
+
+   /*
+    * Waits for the queued checkpoints to be written and stops the background thread
+    *
+    * @throws IOException if writing any checkpoint failed
+    */
+   public void close() throws IOException
+   {
+      writer.shutdown();
+      try
+      {
+         writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      if (failure != null)
+      {
+         throw failure;
+      }
+   } // public void close() throws IOException
+} // public class Checkpointer
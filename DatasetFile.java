@@ -0,0 +1,367 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/*
+ * A binary dataset of training cases, memory-mapped for reading. All values are little-endian. The header is
+ *
+ *    int magic                  //MAGIC, the bytes "NLDS" read as a little-endian int
+ *    int version                //VERSION
+ *    int inputType              //TYPE_UINT8 or TYPE_FLOAT32
+ *    int numCases               //The number of cases
+ *    int inputWidth             //The number of inputs in each case
+ *    int outputWidth            //The number of targets in each case
+ *    long checksum              //The CRC32 of both sections
+ *    long inputOffset           //The byte offset of the input section, a multiple of SECTION_ALIGNMENT
+ *    long targetOffset          //The byte offset of the target section, a multiple of SECTION_ALIGNMENT
+ *
+ * followed by two sections stored column block by column block rather than case by case: the inputs of every
+ * case, numCases x inputWidth values of the input type, and then the targets of every case, numCases x
+ * outputWidth float32 values. A uint8 input b stands for the value b / 255.0, the scale the image tools write
+ * pixels at, so a dataset converted from their text files loads into exactly the same truth table. float32
+ * inputs and targets are rounded to single precision.
+ * ----------------------------------
+ * VARIABLES:
+ *
+ * int version                   //The version of the format the file was written with
+ * int inputType                 //The type of the stored inputs
+ * int numCases                  //The number of cases in the file
+ * int inputWidth                //The number of inputs in each case
+ * int outputWidth               //The number of targets in each case
+ * long checksum                 //The CRC32 of the sections stored in the header
+ * long inputOffset              //The byte offset of the first input
+ * long targetOffset             //The byte offset of the first target
+ * MappedByteBuffer buffer       //The whole file, mapped read-only, in little-endian order, or null when only the
+ *                               //header has been read
+ *
+ * METHODS:
+ *
+ * public static boolean isDatasetFile(File file) throws IOException
+ * public static DatasetFile readHeader(File file) throws IOException
+ * public static DatasetFile open(File file) throws IOException
+ * public int inputCaseBytes()
+ * public int targetCaseBytes()
+ * public void checkShape(int cases, int inputs, int outputs) throws IOException
+ * public void verifyChecksum() throws IOException
+ * public void readCase(int caseIndex, double[] row)
+ * public void readCase(ByteBuffer inputs, int inputPosition, ByteBuffer targets, int targetPosition, double[] row)
+ * public void read(double[][] table, int cases)
+ * public static void write(File file, double[][] table, int cases, int inputs, int outputs, int inputType) throws IOException
+ * public static void main(String[] args) throws IOException
+ */
+public class DatasetFile
+{
+   public static final int MAGIC = 0x53444C4E;
+   public static final int VERSION = 1;
+   public static final int TYPE_UINT8 = 0;
+   public static final int TYPE_FLOAT32 = 1;
+   public static final int HEADER_BYTES = 48;
+   public static final int SECTION_ALIGNMENT = 64;
+
+   public int version;
+   public int inputType;
+   public int numCases;
+   public int inputWidth;
+   public int outputWidth;
+   public long checksum;
+   public long inputOffset;
+   public long targetOffset;
+   public MappedByteBuffer buffer;
+
+   /*
+    * Tells whether a file starts with the dataset magic number, so that text case files can still be loaded
+    *
+    * @param file   the file to check
+    * @return       true if the file is a binary dataset
+    */
+   public static boolean isDatasetFile(File file) throws IOException
+   {
+      try (RandomAccessFile in = new RandomAccessFile(file, "r"))
+      {
+         if (in.length() < 4)
+         {
+            return false;
+         }
+         return Integer.reverseBytes(in.readInt()) == MAGIC;
+      }
+   } // public static boolean isDatasetFile(File file) throws IOException
+
+   /*
+    * Reads the header of a binary dataset without mapping the cases, as streaming does for datasets of any size
+    *
+    * @param file   the file to read
+    * @return       the dataset, with a null buffer
+    * @throws IOException if the file is not a binary dataset of a supported version or is truncated
+    */
+   public static DatasetFile readHeader(File file) throws IOException
+   {
+      DatasetFile dataset = new DatasetFile();
+      ByteBuffer header;
+      long size;
+      try (FileChannel channel = FileChannel.open(file.toPath()))
+      {
+         size = channel.size();
+         header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER_BYTES));
+      }
+      header.order(ByteOrder.LITTLE_ENDIAN);
+
+      if (header.limit() < HEADER_BYTES || header.getInt(0) != MAGIC)
+      {
+         throw new IOException(file + " is not a binary dataset");
+      }
+      dataset.version = header.getInt(4);
+      if (dataset.version != VERSION)
+      {
+         throw new IOException(file + " has dataset version " + dataset.version + ", expected " + VERSION);
+      }
+      dataset.inputType = header.getInt(8);
+      if (dataset.inputType != TYPE_UINT8 && dataset.inputType != TYPE_FLOAT32)
+      {
+         throw new IOException(file + " has unknown input type " + dataset.inputType);
+      }
+      dataset.numCases = header.getInt(12);
+      dataset.inputWidth = header.getInt(16);
+      dataset.outputWidth = header.getInt(20);
+      dataset.checksum = header.getLong(24);
+      dataset.inputOffset = header.getLong(32);
+      dataset.targetOffset = header.getLong(40);
+
+      long inputBytes = (long) dataset.numCases * dataset.inputCaseBytes();
+      long targetBytes = (long) dataset.numCases * dataset.targetCaseBytes();
+      if (dataset.inputOffset < HEADER_BYTES || dataset.targetOffset < dataset.inputOffset + inputBytes ||
+          dataset.targetOffset + targetBytes > size)
+      {
+         throw new IOException(file + " is truncated: " + dataset.numCases + " cases do not fit");
+      }
+      return dataset;
+   } // public static DatasetFile readHeader(File file) throws IOException
+
+   /*
+    * Maps a whole binary dataset and reads its header
+    *
+    * @param file   the file to open
+    * @return       the opened dataset
+    * @throws IOException if the file is not a binary dataset of a supported version, is truncated, or is too
+    *                     large to map at once, in which case it can still be streamed
+    */
+   public static DatasetFile open(File file) throws IOException
+   {
+      DatasetFile dataset = readHeader(file);
+      try (FileChannel channel = FileChannel.open(file.toPath()))
+      {
+         if (channel.size() > Integer.MAX_VALUE)
+         {
+            throw new IOException(file + " is too large to load at once; stream it instead");
+         }
+         dataset.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      dataset.buffer.order(ByteOrder.LITTLE_ENDIAN);
+      return dataset;
+   } // public static DatasetFile open(File file) throws IOException
+
+   /*
+    * Gives the number of bytes the inputs of one case take
+    */
+   public int inputCaseBytes()
+   {
+      return inputWidth * (inputType == TYPE_UINT8 ? 1 : 4);
+   }
+
+   /*
+    * Gives the number of bytes the targets of one case take
+    */
+   public int targetCaseBytes()
+   {
+      return outputWidth * 4;
+   }
+
+   /*
+    * Checks that the dataset holds enough cases of the widths a network needs
+    *
+    * @param cases     the number of cases the network will read
+    * @param inputs    the number of inputs of the network
+    * @param outputs   the number of outputs of the network
+    * @throws IOException if the dataset has different widths or too few cases
+    */
+   public void checkShape(int cases, int inputs, int outputs) throws IOException
+   {
+      if (inputWidth != inputs || outputWidth != outputs)
+      {
+         throw new IOException("The dataset has " + inputWidth + " inputs and " + outputWidth +
+                               " outputs, but the network has " + inputs + " and " + outputs);
+      }
+      if (numCases < cases)
+      {
+         throw new IOException("The dataset has " + numCases + " cases, but " + cases + " are needed");
+      }
+   } // public void checkShape(int cases, int inputs, int outputs) throws IOException
+
+   /*
+    * Checks both sections against the CRC32 in the header
+    *
+    * @throws IOException if the checksums differ
+    */
+   public void verifyChecksum() throws IOException
+   {
+      int inputStart = (int) inputOffset;
+      int targetStart = (int) targetOffset;
+      CRC32 crc = new CRC32();
+      crc.update(buffer.duplicate().position(inputStart).limit(inputStart + numCases * inputCaseBytes()));
+      crc.update(buffer.duplicate().position(targetStart).limit(targetStart + numCases * targetCaseBytes()));
+      if (crc.getValue() != checksum)
+      {
+         throw new IOException("The dataset checksum is " + Long.toHexString(crc.getValue()) + ", expected " +
+                               Long.toHexString(checksum));
+      }
+   } // public void verifyChecksum() throws IOException
+
+   /*
+    * Copies one case of a mapped dataset into a truth table row, inputs first and then targets
+    *
+    * @param caseIndex   the case to read
+    * @param row         receives the inputWidth inputs followed by the outputWidth targets
+    */
+   public void readCase(int caseIndex, double[] row)
+   {
+      readCase(buffer, (int) inputOffset + caseIndex * inputCaseBytes(), buffer, 
+               (int) targetOffset + caseIndex * targetCaseBytes(), row);
+   }
+
+   /*
+    * Decodes one case from buffers holding its inputs and targets, such as windows of a streamed dataset
+    *
+    * @param inputs           a little-endian buffer holding the inputs of the case
+    * @param inputPosition    the offset of the first input in inputs
+    * @param targets          a little-endian buffer holding the targets of the case
+    * @param targetPosition   the offset of the first target in targets
+    * @param row              receives the inputWidth inputs followed by the outputWidth targets
+    */
+   public void readCase(ByteBuffer inputs, int inputPosition, ByteBuffer targets, int targetPosition, double[] row)
+   {
+      if (inputType == TYPE_UINT8)
+      {
+         for (int i = 0; i < inputWidth; i++)
+         {
+            row[i] = (inputs.get(inputPosition + i) & 0xFF) / 255.0;
+         }
+      }
+      else
+      {
+         for (int i = 0; i < inputWidth; i++)
+         {
+            row[i] = inputs.getFloat(inputPosition + 4 * i);
+         }
+      }
+
+      for (int i = 0; i < outputWidth; i++)
+      {
+         row[inputWidth + i] = targets.getFloat(targetPosition + 4 * i);
+      }
+   } // public void readCase(ByteBuffer inputs, int inputPosition, ByteBuffer targets, int targetPosition, double[] row)
+
+   /*
+    * Copies the first cases of the dataset into a truth table
+    *
+    * @param table   receives one row per case
+    * @param cases   the number of cases to read
+    */
+   public void read(double[][] table, int cases)
+   {
+      for (int r = 0; r < cases; r++)
+      {
+         readCase(r, table[r]);
+      }
+   }
+
+   /*
+    * Writes a truth table to a binary dataset
+    *
+    * @param file        the file to write
+    * @param table       the cases, each holding its inputs followed by its targets
+    * @param cases       the number of cases to write
+    * @param inputs      the number of inputs in each case
+    * @param outputs     the number of targets in each case
+    * @param inputType   TYPE_UINT8 to store each input as a multiple of 1 / 255, or TYPE_FLOAT32
+    * @throws IllegalArgumentException if an input cannot be stored exactly as uint8
+    */
+   public static void write(File file, double[][] table, int cases, int inputs, int outputs, int inputType) throws IOException
+   {
+      int inputBytes = cases * inputs * (inputType == TYPE_UINT8 ? 1 : 4);
+      int inputOffset = (HEADER_BYTES + SECTION_ALIGNMENT - 1) / SECTION_ALIGNMENT * SECTION_ALIGNMENT;
+      int targetOffset = (inputOffset + inputBytes + SECTION_ALIGNMENT - 1) / SECTION_ALIGNMENT * SECTION_ALIGNMENT;
+
+      ByteBuffer content = ByteBuffer.allocate(targetOffset + cases * outputs * 4).order(ByteOrder.LITTLE_ENDIAN);
+      for (int r = 0; r < cases; r++)
+      {
+         for (int i = 0; i < inputs; i++)
+         {
+            double value = table[r][i];
+            if (inputType == TYPE_UINT8)
+            {
+               long level = Math.round(value * 255.0);
+               if (level < 0 || level > 255 || level / 255.0 != value)
+               {
+                  throw new IllegalArgumentException("Input " + value + " of case " + r + ", column " + i +
+                                                     " is not a multiple of 1/255 in [0, 1]; use float32 inputs");
+               }
+               content.put(inputOffset + r * inputs + i, (byte) level);
+            }
+            else
+            {
+               content.putFloat(inputOffset + 4 * (r * inputs + i), (float) value);
+            }
+         } // for (int i = 0; i < inputs; i++)
+
+         for (int i = 0; i < outputs; i++)
+         {
+            content.putFloat(targetOffset + 4 * (r * outputs + i), (float) table[r][inputs + i]);
+         }
+      } // for (int r = 0; r < cases; r++)
+
+      CRC32 crc = new CRC32();
+      crc.update(content.duplicate().position(inputOffset).limit(inputOffset + inputBytes));
+      crc.update(content.duplicate().position(targetOffset));
+
+      content.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, inputType).putInt(12, cases).putInt(16, inputs)
+             .putInt(20, outputs).putLong(24, crc.getValue()).putLong(32, inputOffset).putLong(40, targetOffset);
+
+      try (RandomAccessFile out = new RandomAccessFile(file, "rw"))
+      {
+         out.setLength(0);
+         FileChannel channel = out.getChannel();
+         while (content.hasRemaining())
+         {
+            channel.write(content);
+         }
+      }
+   } // public static void write(File file, double[][] table, int cases, int inputs, int outputs, int inputType) throws IOException
+
+   /*
+    * Converts a text case file to a binary dataset:
+    *    java DatasetFile <text case file> <numCases> <inputWidth> <outputWidth> <dataset file> [uint8|float32]
+    * Inputs are stored as uint8 by default, which suits the image case files.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      if (args.length < 5)
+      {
+         System.out.println("Usage: java DatasetFile <text case file> <numCases> <inputWidth> <outputWidth> " +
+                            "<dataset file> [uint8|float32]");
+         return;
+      }
+      int cases = Integer.parseInt(args[1]);
+      int inputs = Integer.parseInt(args[2]);
+      int outputs = Integer.parseInt(args[3]);
+      int inputType = args.length > 5 && args[5].equals("float32") ? TYPE_FLOAT32 : TYPE_UINT8;
+
+      double[][] table = new double[cases][inputs + outputs];
+      CaseParser.parse(args[0], table, cases, inputs + outputs);
+      write(new File(args[4]), table, cases, inputs, outputs, inputType);
+      System.out.println("Wrote " + cases + " cases to " + args[4] + " (" + new File(args[4]).length() + " bytes)");
+   } // public static void main(String[] args) throws IOException
+} // public class DatasetFile
@@ -0,0 +1,69 @@
+/*
+ * The measurements of a training run reported to TrainingListeners after each metrics interval. Every value
+ * covers the epochs of the interval except the update norm, which is sampled from its last epoch.
+ * ----------------------------------
+ * VARIABLES:
+ *
+ * int epoch                     //The number of training iterations completed
+ * int epochs                    //The number of iterations the measurements cover
+ * double error                  //The average error of the last iteration
+ * double epochMillis            //The mean wall time of an iteration
+ * double casesPerSecond         //The number of cases trained per second over the iterations
+ * double updateNorm             //The Euclidean norm of the change in the weights over the last iteration, or NaN
+ *                               //when the last iteration was not sampled
+ * long gcMillis                 //The time the garbage collectors reported spending during the iterations
+ *
+ * METHODS:
+ *
+ * public String toCsv()
+ * public String toJson()
+ */
+public class EpochMetrics
+{
+   public static final String CSV_HEADER = "epoch,epochs,error,epochMillis,casesPerSecond,updateNorm,gcMillis";
+
+   public int epoch;
+   public int epochs;
+   public double error;
+   public double epochMillis;
+   public double casesPerSecond;
+   public double updateNorm;
+   public long gcMillis;
+
+   /*
+    * Formats the measurements as a line of comma-separated values in the order of CSV_HEADER, with an empty
+    * value for a measurement that is NaN or infinite
+    *
+    * @return   the line, without a line separator
+    */
+   public String toCsv()
+   {
+      return epoch + "," + epochs + "," + format(error, "") + "," + format(epochMillis, "") + "," +
+             format(casesPerSecond, "") + "," + format(updateNorm, "") + "," + gcMillis;
+   }
+
+   /*
+    * Formats the measurements as a JSON object on one line, with null for a measurement that is NaN or infinite,
+    * which JSON has no numbers for
+    *
+    * @return   the object, without a line separator
+    */
+   public String toJson()
+   {
+      return "{\"epoch\":" + epoch + ",\"epochs\":" + epochs + ",\"error\":" + format(error, "null") +
+             ",\"epochMillis\":" + format(epochMillis, "null") + ",\"casesPerSecond\":" +
+             format(casesPerSecond, "null") + ",\"updateNorm\":" + format(updateNorm, "null") + ",\"gcMillis\":" +
+             gcMillis + "}";
+   }
+
+   /*
+    * @param value     a measurement
+    * @param missing   the text written in place of a value that is NaN or infinite
+    *
+    * @return          the value as text
+    */
+   private static String format(double value, String missing)
+   {
+      return Double.isFinite(value) ? Double.toString(value) : missing;
+   }
+} // public class EpochMetrics
@@ -0,0 +1,148 @@
+import java.util.concurrent.ThreadLocalRandom;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * The Java Flight Recorder events the network emits, so that its epochs, forward passes, checkpoints and dataset
+ * loads can be lined up with garbage collection, safepoints and I/O in JDK Mission Control. Every event is
+ * disabled by default. While an event is disabled its begin, isEnabled and commit calls compile down to nothing,
+ * so the hot loops pay nothing for it. The events are enabled in the recording's settings, for example
+ *
+ *    java -XX:StartFlightRecording:filename=train.jfr,+nlayer.TrainingEpoch#enabled=true,+nlayer.ForwardPass#enabled=true N_Layer
+ *
+ * A forward pass of one case takes microseconds on small networks, so only about one case in
+ * FORWARD_SAMPLE_INTERVAL is recorded. Passes that run a batch of cases or inputs together are recorded as one
+ * event, sampled in proportion to their size. Each thread samples with its own ThreadLocalRandom, so training
+ * threads share no counter in the hot loop.
+ */
+public class FlightEvents
+{
+   /*
+    * The number of forward passes for each one recorded
+    */
+   public static final int FORWARD_SAMPLE_INTERVAL = 1024;
+
+   /*
+    * One training iteration over every case
+    */
+   @Name("nlayer.TrainingEpoch")
+   @Label("Training Epoch")
+   @Category({"N-Layer", "Training"})
+   @Enabled(false)
+   @StackTrace(false)
+   public static class TrainingEpoch extends Event
+   {
+      @Label("Iteration")
+      @Description("The number of training iterations completed, including this one")
+      public int iteration;
+
+      @Label("Error")
+      @Description("The average error of the iteration")
+      public double error;
+
+      @Label("Cases")
+      public int cases;
+   }
+
+   /*
+    * A sample of the forward passes run for inference or training, of one case or of a batch
+    * ----------------------------------
+    * METHODS:
+    *
+    * public void commitSampled(int caseIndex, int count, boolean training)
+    */
+   @Name("nlayer.ForwardPass")
+   @Label("Forward Pass")
+   @Category({"N-Layer", "Inference"})
+   @Enabled(false)
+   @StackTrace(false)
+   public static class ForwardPass extends Event
+   {
+      @Label("Case Index")
+      @Description("The case, or the first case or input of the batch")
+      public int caseIndex;
+
+      @Label("Count")
+      @Description("The number of cases or inputs run together")
+      public int count;
+
+      @Label("Training")
+      @Description("Whether the pass kept the values backpropagation needs")
+      public boolean training;
+
+      @Label("Sample Interval")
+      @Description("The number of cases run for each one recorded")
+      public int sampleInterval;
+
+      /*
+       * Records the pass if the event is enabled and the pass is sampled, which a pass of count cases is with
+       * probability count / FORWARD_SAMPLE_INTERVAL
+       *
+       * @param caseIndex   the case, or the first case or input of the batch
+       * @param count       the number of cases or inputs run together
+       * @param training    whether the pass kept the values backpropagation needs
+       */
+      public void commitSampled(int caseIndex, int count, boolean training)
+      {
+         if (isEnabled() && ThreadLocalRandom.current().nextInt(FORWARD_SAMPLE_INTERVAL) < count)
+         {
+            this.caseIndex = caseIndex;
+            this.count = count;
+            this.training = training;
+            sampleInterval = FORWARD_SAMPLE_INTERVAL;
+            commit();
+         }
+      } // public void commitSampled(int caseIndex, int count, boolean training)
+   } // public static class ForwardPass extends Event
+
+   /*
+    * A checkpoint written by the background checkpoint writer
+    */
+   @Name("nlayer.WeightCheckpoint")
+   @Label("Weight Checkpoint")
+   @Category({"N-Layer", "Training"})
+   @Enabled(false)
+   public static class WeightCheckpoint extends Event
+   {
+      @Label("Iteration")
+      public int iteration;
+
+      @Label("Path")
+      public String path;
+
+      @Label("Bytes")
+      @DataAmount
+      @Description("The size of the weight file and the training state written")
+      public long bytes;
+   }
+
+   /*
+    * The loading or opening of a case file
+    */
+   @Name("nlayer.DatasetLoad")
+   @Label("Dataset Load")
+   @Category({"N-Layer", "Data"})
+   @Enabled(false)
+   public static class DatasetLoad extends Event
+   {
+      @Label("Path")
+      public String path;
+
+      @Label("Format")
+      @Description("text, binary, or stream when the binary dataset is only opened for streaming")
+      public String format;
+
+      @Label("Cases")
+      public int cases;
+
+      @Label("Bytes")
+      @DataAmount
+      public long bytes;
+   }
+} // public class FlightEvents
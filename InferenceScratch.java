@@ -0,0 +1,50 @@
+/*
+ * Holds the working arrays used to run a batch of arbitrary inputs through an N_Layer network with its infer
+ * methods. Every thread scoring at the same time needs its own, so callers either keep one per thread or let the
+ * network lend them one from its pool. The layout matches BatchScratch: the value of activation k of layer n for
+ * the b-th input of the batch is at index b * numActivations[n] + k. Networks stored in single precision run one
+ * input at a time through the first row of floatActivations, with the mixed precision sums in activations.
+ * ----------------------------------
+ * VARIABLES:
+ *
+ * int capacity                  //The largest number of inputs run together
+ * double[][] activations        //The activation values of each layer for every input in the batch
+ * float[][] floatActivations    //The single precision activation values of each layer for one input, or null
+ *
+ * METHODS:
+ *
+ * public InferenceScratch(int[] numActivations, int numLayers, int capacity, boolean useFloat)
+ */
+public class InferenceScratch
+{
+   public int capacity;
+   public double[][] activations;
+   public float[][] floatActivations;
+
+   /*
+    * Allocates the arrays for a batch of the given size
+    *
+    * @param numActivations   the number of activations in each layer of the network
+    * @param numLayers        the number of connectivity layers in the network
+    * @param capacity         the largest number of inputs run together
+    * @param useFloat         whether the network stores its weights in single precision
+    */
+   public InferenceScratch(int[] numActivations, int numLayers, int capacity, boolean useFloat)
+   {
+      this.capacity = capacity;
+      activations = new double[numLayers + 1][];
+      for (int n = 0; n <= numLayers; n++)
+      {
+         activations[n] = new double[capacity * numActivations[n]];
+      }
+
+      if (useFloat)
+      {
+         floatActivations = new float[numLayers + 1][];
+         for (int n = 0; n <= numLayers; n++)
+         {
+            floatActivations[n] = new float[numActivations[n]];
+         }
+      }
+   } // public InferenceScratch(int[] numActivations, int numLayers, int capacity, boolean useFloat)
+} // public class InferenceScratch
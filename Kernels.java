@@ -0,0 +1,99 @@
+import java.nio.ByteBuffer;
+
+/*
+ * The array operations that make up the inner loops of running and training an N_Layer network. Keeping them
+ * behind one interface lets the network switch between a plain scalar implementation and a vectorized one
+ * without changing any of its loops.
+ * ----------------------------------
+ * METHODS:
+ *
+ * public double dot(double[] x, int xOffset, double[] y, int yOffset, int length)
+ * public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length)
+ * public void sigmoid(double[] x, double[] y, int length)
+ * public float dot(float[] x, int xOffset, float[] y, int yOffset, int length)
+ * public double mixedDot(float[] x, int xOffset, float[] y, int yOffset, int length)
+ * public void axpy(float a, float[] x, int xOffset, float[] y, int yOffset, int length)
+ * public void mixedAxpy(double a, float[] x, int xOffset, double[] y, int yOffset, int length)
+ * public void sigmoid(float[] x, float[] y, int length)
+ * public void axpy(double a, ByteBuffer x, int xIndex, double[] y, int yOffset, int length)
+ * public void mixedAxpy(double a, ByteBuffer x, int xIndex, double[] y, int yOffset, int length)
+ */
+public interface Kernels
+{
+   /*
+    * Computes the dot product of two runs of values
+    *
+    * @param x         the array holding the first run
+    * @param xOffset   the index of the first value of the first run
+    * @param y         the array holding the second run
+    * @param yOffset   the index of the first value of the second run
+    * @param length    the number of values in each run
+    * @return          the sum of the products of the paired values
+    */
+   public double dot(double[] x, int xOffset, double[] y, int yOffset, int length);
+
+   /*
+    * Adds a multiple of one run of values to another, y[i] += a * x[i]
+    *
+    * @param a         the multiple of x to add
+    * @param x         the array holding the run being added
+    * @param xOffset   the index of the first value of x
+    * @param y         the array holding the run being modified
+    * @param yOffset   the index of the first value of y
+    * @param length    the number of values in each run
+    */
+   public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+   /*
+    * Computes the sigmoid function of each value in a run, y[i] = 1 / (1 + e^(-x[i]))
+    *
+    * @param x        the values to apply the sigmoid function to
+    * @param y        receives the results, which may be the same array as x
+    * @param length   the number of values, starting at index 0
+    */
+   public void sigmoid(double[] x, double[] y, int length);
+
+   /*
+    * Computes the dot product of two runs of single precision values, summing in single precision
+    */
+   public float dot(float[] x, int xOffset, float[] y, int yOffset, int length);
+
+   /*
+    * Computes the dot product of two runs of single precision values, summing in double precision
+    */
+   public double mixedDot(float[] x, int xOffset, float[] y, int yOffset, int length);
+
+   /*
+    * Adds a multiple of one run of single precision values to another, y[i] += a * x[i]
+    */
+   public void axpy(float a, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+   /*
+    * Adds a multiple of a run of single precision values to a run of double precision sums, y[i] += a * x[i]
+    */
+   public void mixedAxpy(double a, float[] x, int xOffset, double[] y, int yOffset, int length);
+
+   /*
+    * Computes the sigmoid function of each value in a run of single precision values
+    */
+   public void sigmoid(float[] x, float[] y, int length);
+
+   /*
+    * Adds a multiple of a run of little-endian doubles held in a buffer, such as a mapped weight file, to a run 
+    * of values, y[i] += a * x[i]
+    *
+    * @param a         the multiple of x to add
+    * @param x         the buffer holding the run being added, set to little-endian order
+    * @param xIndex    the index of the first double of x, counted in doubles from the start of the buffer
+    * @param y         the array holding the run being modified
+    * @param yOffset   the index of the first value of y
+    * @param length    the number of values in each run
+    */
+   public void axpy(double a, ByteBuffer x, int xIndex, double[] y, int yOffset, int length);
+
+   /*
+    * Adds a multiple of a run of little-endian floats held in a buffer to a run of double precision sums, 
+    * y[i] += a * x[i]
+    */
+   public void mixedAxpy(double a, ByteBuffer x, int xIndex, double[] y, int yOffset, int length);
+} // public interface Kernels
@@ -0,0 +1,68 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/*
+ * Writes training measurements to a file, one line per metrics interval, either as comma-separated values under
+ * a header line or as JSON Lines. Each line is flushed as it is written, so the file can be followed while the
+ * network trains.
+ * ----------------------------------
+ * VARIABLES:
+ *
+ * BufferedWriter out            //The file being written
+ * boolean json                  //Whether lines are written as JSON objects instead of comma-separated values
+ *
+ * METHODS:
+ *
+ * public MetricsFileSink(File file, String format) throws IOException
+ * public void epochFinished(EpochMetrics metrics) throws IOException
+ * public void close() throws IOException
+ */
+public class MetricsFileSink implements TrainingListener
+{
+   public BufferedWriter out;
+   public boolean json;
+
+   /*
+    * Creates the file, replacing any file of the same name
+    *
+    * @param file     the file to write
+    * @param format   "csv" or "jsonl"
+    * @throws IllegalArgumentException if the format is unknown
+    */
+   public MetricsFileSink(File file, String format) throws IOException
+   {
+      if (!format.equals("csv") && !format.equals("jsonl"))
+      {
+         throw new IllegalArgumentException("Unknown metrics format " + format);
+      }
+      json = format.equals("jsonl");
+      out = new BufferedWriter(new FileWriter(file));
+      if (!json)
+      {
+         out.write(EpochMetrics.CSV_HEADER);
+         out.newLine();
+      }
+   } // public MetricsFileSink(File file, String format) throws IOException
+
+   /*
+    * Writes and flushes the line of one metrics interval
+    *
+    * @param metrics   the measurements
+    */
+   public void epochFinished(EpochMetrics metrics) throws IOException
+   {
+      out.write(json ? metrics.toJson() : metrics.toCsv());
+      out.newLine();
+      out.flush();
+   }
+
+   /*
+    * Closes the file
+    */
+   public void close() throws IOException
+   {
+      out.close();
+   }
+} // public class MetricsFileSink
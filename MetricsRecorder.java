@@ -0,0 +1,250 @@
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Measures a training run for its TrainingListeners. The measurements are gathered over intervals of epochs
+ * rather than every epoch, so that networks whose epochs take microseconds can be watched without the clock,
+ * the garbage collector counters and the listeners costing more than the training: each interval reads the clock
+ * and the collectors once and makes one call to each listener.
+ *
+ * The weight-update norm is measured over the last epoch of an interval by copying the weights before it and
+ * comparing them after it. Those two passes over the weights can cost a few percent of an epoch on a large
+ * network, so the norm is only sampled while the time spent sampling stays within NORM_BUDGET of the training
+ * time; other intervals report no norm. With no listeners the recorder does nothing at all.
+ * ----------------------------------
+ * VARIABLES:
+ *
+ * int interval                  //The number of epochs in each metrics interval
+ * ArrayList<TrainingListener> listeners //The listeners told about each interval
+ * List<GarbageCollectorMXBean> collectors //The garbage collectors whose time is reported
+ * double[] previousWeights      //The double precision weights before the sampled epoch
+ * float[] previousFloatWeights  //The single precision weights before the sampled epoch
+ * boolean sampled               //Whether the weights were copied before the current epoch
+ * long intervalStart            //The System.nanoTime at which the current interval began
+ * int intervalFirstEpoch        //The number of epochs completed when the current interval began
+ * long gcStart                  //The collection time reported when the current interval began
+ * long trainingStart            //The System.nanoTime at which training began
+ * long samplingNanos            //The time spent copying and comparing weights for the update norm
+ *
+ * METHODS:
+ *
+ * public MetricsRecorder(int interval)
+ * public void addListener(TrainingListener listener)
+ * public boolean isActive()
+ * public void start(int epoch)
+ * public void beforeEpoch(int epoch, double[] weights, float[] floatWeights)
+ * public void afterEpoch(int epoch, double error, int numCases, double[] weights, float[] floatWeights, boolean last) throws IOException
+ * public double updateNorm(double[] weights, float[] floatWeights)
+ * public long gcMillis()
+ * public void close() throws IOException
+ */
+public class MetricsRecorder
+{
+   /*
+    * The largest fraction of the training time spent sampling the update norm
+    */
+   public static final double NORM_BUDGET = 0.005;
+
+   public int interval;
+   public ArrayList<TrainingListener> listeners;
+   public List<GarbageCollectorMXBean> collectors;
+   public double[] previousWeights;
+   public float[] previousFloatWeights;
+   public boolean sampled;
+   public long intervalStart;
+   public int intervalFirstEpoch;
+   public long gcStart;
+   public long trainingStart;
+   public long samplingNanos;
+
+   /*
+    * Creates a recorder with no listeners
+    *
+    * @param interval   the number of epochs in each metrics interval
+    */
+   public MetricsRecorder(int interval)
+   {
+      this.interval = Math.max(1, interval);
+      listeners = new ArrayList<TrainingListener>();
+      collectors = ManagementFactory.getGarbageCollectorMXBeans();
+   }
+
+   /*
+    * Adds a listener to be told about each interval
+    *
+    * @param listener   the listener
+    */
+   public void addListener(TrainingListener listener)
+   {
+      listeners.add(listener);
+   }
+
+   /*
+    * Tells whether anything is listening, so training can skip the recorder entirely when nothing is
+    *
+    * @return   true if there are listeners
+    */
+   public boolean isActive()
+   {
+      return !listeners.isEmpty();
+   }
+
+   /*
+    * Begins the first interval
+    *
+    * @param epoch   the number of epochs already completed, which is not 0 when training resumes
+    */
+   public void start(int epoch)
+   {
+      intervalFirstEpoch = epoch;
+      intervalStart = System.nanoTime();
+      trainingStart = intervalStart;
+      samplingNanos = 0;
+      gcStart = gcMillis();
+   } // public void start(int epoch)
+
+   /*
+    * Copies the weights before the last epoch of an interval, so its update norm can be measured, unless 
+    * sampling has used up its share of the training time
+    *
+    * @param epoch          the number of epochs completed before this one
+    * @param weights        the double precision weights, or null when they are stored in single precision
+    * @param floatWeights   the single precision weights, or null when they are stored in double precision
+    */
+   public void beforeEpoch(int epoch, double[] weights, float[] floatWeights)
+   {
+      sampled = false;
+      if ((epoch + 1) % interval != 0)
+      {
+         return;
+      }
+      long now = System.nanoTime();
+      if (samplingNanos > NORM_BUDGET * (now - trainingStart))
+      {
+         return;
+      }
+
+      sampled = true;
+      if (weights != null)
+      {
+         if (previousWeights == null)
+         {
+            previousWeights = new double[weights.length];
+         }
+         System.arraycopy(weights, 0, previousWeights, 0, weights.length);
+      }
+      else
+      {
+         if (previousFloatWeights == null)
+         {
+            previousFloatWeights = new float[floatWeights.length];
+         }
+         System.arraycopy(floatWeights, 0, previousFloatWeights, 0, floatWeights.length);
+      }
+      samplingNanos += System.nanoTime() - now;
+   } // public void beforeEpoch(int epoch, double[] weights, float[] floatWeights)
+
+   /*
+    * Ends an interval when its last epoch, or the last epoch of training, has finished, and tells the listeners
+    * about it
+    *
+    * @param epoch          the number of epochs completed, including this one
+    * @param error          the average error of this epoch
+    * @param numCases       the number of cases trained in each epoch
+    * @param weights        the double precision weights, or null when they are stored in single precision
+    * @param floatWeights   the single precision weights, or null when they are stored in double precision
+    * @param last           whether training stops after this epoch
+    */
+   public void afterEpoch(int epoch, double error, int numCases, double[] weights, float[] floatWeights,
+                          boolean last) throws IOException
+   {
+      if (epoch % interval != 0 && !last)
+      {
+         return;
+      }
+
+      long now = System.nanoTime();
+      long gcNow = gcMillis();
+      double norm = Double.NaN;
+      if (sampled)
+      {
+         norm = updateNorm(weights, floatWeights);
+         samplingNanos += System.nanoTime() - now;
+      }
+      EpochMetrics metrics = new EpochMetrics();
+      metrics.epoch = epoch;
+      metrics.epochs = epoch - intervalFirstEpoch;
+      metrics.error = error;
+      metrics.epochMillis = (now - intervalStart) / 1e6 / Math.max(1, metrics.epochs);
+      metrics.casesPerSecond = (double) numCases * metrics.epochs / ((now - intervalStart) / 1e9);
+      metrics.updateNorm = norm;
+      metrics.gcMillis = gcNow - gcStart;
+      for (int l = 0; l < listeners.size(); l++)
+      {
+         listeners.get(l).epochFinished(metrics);
+      }
+
+      sampled = false;
+      intervalFirstEpoch = epoch;
+      gcStart = gcNow;
+      intervalStart = System.nanoTime();
+   } // public void afterEpoch(int epoch, double error, int numCases, double[] weights, float[] floatWeights, boolean last)
+
+   /*
+    * Measures how far the weights moved over the sampled epoch
+    *
+    * @param weights        the double precision weights, or null
+    * @param floatWeights   the single precision weights, or null
+    * @return               the Euclidean norm of the change in the weights
+    */
+   public double updateNorm(double[] weights, float[] floatWeights)
+   {
+      double sum = 0.0;
+      if (weights != null)
+      {
+         for (int w = 0; w < weights.length; w++)
+         {
+            double change = weights[w] - previousWeights[w];
+            sum += change * change;
+         }
+      }
+      else
+      {
+         for (int w = 0; w < floatWeights.length; w++)
+         {
+            double change = floatWeights[w] - previousFloatWeights[w];
+            sum += change * change;
+         }
+      }
+      return Math.sqrt(sum);
+   } // public double updateNorm(double[] weights, float[] floatWeights)
+
+   /*
+    * Sums the time every garbage collector has reported spending so far
+    *
+    * @return   the collection time in milliseconds
+    */
+   public long gcMillis()
+   {
+      long total = 0;
+      for (int c = 0; c < collectors.size(); c++)
+      {
+         total += Math.max(0, collectors.get(c).getCollectionTime());
+      }
+      return total;
+   }
+
+   /*
+    * Closes every listener
+    */
+   public void close() throws IOException
+   {
+      for (int l = 0; l < listeners.size(); l++)
+      {
+         listeners.get(l).close();
+      }
+   }
+} // public class MetricsRecorder
@@ -0,0 +1,79 @@
+/*
+ * Keeps the measurements of the most recent metrics intervals in memory, overwriting the oldest once it is full.
+ * It can be read from another thread while the network trains.
+ * ----------------------------------
+ * VARIABLES:
+ *
+ * EpochMetrics[] entries        //The kept measurements, in the order they were written modulo the capacity
+ * long count                    //The number of measurements written so far
+ *
+ * METHODS:
+ *
+ * public MetricsRingBuffer(int capacity)
+ * public synchronized void epochFinished(EpochMetrics metrics)
+ * public synchronized int size()
+ * public synchronized EpochMetrics latest()
+ * public synchronized EpochMetrics[] toArray()
+ */
+public class MetricsRingBuffer implements TrainingListener
+{
+   public EpochMetrics[] entries;
+   public long count;
+
+   /*
+    * Creates an empty buffer
+    *
+    * @param capacity   the number of intervals to keep
+    */
+   public MetricsRingBuffer(int capacity)
+   {
+      entries = new EpochMetrics[capacity];
+   }
+
+   /*
+    * Keeps the measurements of an interval, overwriting the oldest when the buffer is full
+    *
+    * @param metrics   the measurements
+    */
+   public synchronized void epochFinished(EpochMetrics metrics)
+   {
+      entries[(int) (count % entries.length)] = metrics;
+      count++;
+   }
+
+   /*
+    * Counts the kept measurements
+    *
+    * @return   the number of intervals kept
+    */
+   public synchronized int size()
+   {
+      return (int) Math.min(count, entries.length);
+   }
+
+   /*
+    * Finds the most recent measurements
+    *
+    * @return   the measurements of the last interval, or null if there are none
+    */
+   public synchronized EpochMetrics latest()
+   {
+      return count == 0 ? null : entries[(int) ((count - 1) % entries.length)];
+   }
+
+   /*
+    * Copies out the kept measurements
+    *
+    * @return   the measurements of the kept intervals, oldest first
+    */
+   public synchronized EpochMetrics[] toArray()
+   {
+      int size = size();
+      EpochMetrics[] copy = new EpochMetrics[size];
+      for (int i = 0; i < size; i++)
+      {
+         copy[i] = entries[(int) ((count - size + i) % entries.length)];
+      }
+      return copy;
+   } // public synchronized EpochMetrics[] toArray()
+} // public class MetricsRingBuffer
@@ -3,7 +3,14 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.time.Duration;
 import java.time.Instant;
 /*
@@ -23,54 +30,143 @@ import java.time.Instant;
  * String trainOrRun             //Determines if the network will train or run
  * int numCases                  //The total number of test cases used for training
  * double learningFactor         //The learning factor, or lambda, used to control how much the weights are modified each step
- * double[][] psi                //The values of omega multiplied by the activation derivative of theta
+ * double[][] psi                //The values of omega multiplied by the activation derivative of theta, sized per layer
  * int maxTrainIters             //The maximum number of training iterations before the training algorithm will stop
  * double errorThreshold         //The minimum value the error must reach before training stops unless max iterations are reached
- * String loadOrRand             //Determines if weights are loaded in by the user or randomized
+ * String loadOrRand             //Determines if weights are loaded in by the user, randomized, mapped ("map") from a 
+ *                               //binary weight file and read in place when running, or resumed ("resume") from a 
+ *                               //checkpoint along with the rest of the training state
  * String weightFile             //The file which holds the user loaded weights
  * double[] weightRange          //The range between which the weights are randomized
  * double[][][] loadedWeights    //The weights loaded in by the user
  * double[][] truthTable         //The truth table which holds values for the given function
  * int trainItersCounter         //The current number of training iterations completed
- * double[][][] weights          //The weight values utilized to modify activation values in the network
+ * double[] weights             //The weight values utilized to modify activation values in the network, with each 
+ *                               //layer's numActivations[n] x numActivations[n + 1] block packed contiguously
+ * int[] weightOffsets           //The index in weights at which each connectivity layer's block begins
  * double deltaWeights           //The change in weights between each step
  * double[][] outputs            //The output values calculated after running the network with all test cases of a function
  * double currentError           //The average error of the total errors returned after running all test cases of a function
- * double[][] activations        //The activation values of the network
- * double[][] theta              //Contains the dot products of all hidden layers and their corresponding weights
+ * double[][] activations        //The activation values of the network, with one exactly sized array per layer
+ * double[][] theta              //Contains the dot products of all hidden layers and their corresponding weights, sized per layer
  * String saveWeightsDecide      //Determines if weights are saved or not
  * String saveWeightFile         //The file to saveWeightsTo
  * long timeElapsed              //The amount of time it takes to train the network
  * int saveInterval              //The interval at which weights are saved
+ * int batchSize                 //The number of cases run together before the weights are modified, 1 for every case
+ * BatchScratch batchScratch     //The working arrays used when training with mini-batches
+ * String kernelType             //Selects the "scalar" or "vector" implementation of the inner loops
+ * Kernels kernels               //The implementation of the inner loops used by the network
+ * int numThreads                //The number of threads that share the cases of each mini-batch during training
+ * ForkJoinPool trainPool        //The pool of threads used for data-parallel training
+ * BatchScratch[] workerScratch  //The working arrays of each training thread
+ * String parallelMode           //Selects "sync" mini-batch training or lock-free "hogwild" training when using threads
+ * String precision              //Selects "double", "float" or "mixed" (float storage with double sums) arithmetic
+ * boolean useFloat              //Whether the weights and activations are stored in single precision
+ * boolean mixedPrecision        //Whether single precision dot products are summed in double precision
+ * float[] floatWeights          //The weights when stored in single precision, in the same layout as weights
+ * float[][] floatActivations    //The activation values when stored in single precision
+ * float[][] floatTheta          //The dot products in single precision training, sized per layer
+ * float[][] floatPsi            //The psi values in single precision training, sized per layer
+ * String errorMode              //When the training error is measured: "afterCase", the default, runs each case again
+ *                               //after its update; "beforeUpdate", opt-in, takes it from the forward pass before the
+ *                               //update, saving a pass but measuring the weights before the last change; "afterEpoch"
+ *                               //runs every case once more after the epoch
+ * String[] activationNames      //The name of the activation function of each layer after the input layer
+ * Activation[] activationFunctions //The activation function of each layer after the input layer
+ * SigmoidTable sigmoidTable     //The lookup table read by sigmoid and lookupSigmoid layers, or null for exact sigmoids
+ * String weightFormat           //The format weights are saved in, "text", "binary", or "both" (text plus a binary 
+ *                               //copy with ".bin" appended to the name); either format can be loaded
+ * WeightFile mappedWeights      //The mapped binary weight file that running reads the weights from, or null
+ * ByteBuffer mappedPayload      //The weights of mappedWeights, read in place without copying them to the heap
+ * String caseSource             //Where cases come from: "memory" loads them all, "stream" streams a binary dataset
+ * int shuffleCases              //The number of truth table rows cases are streamed and shuffled through
+ * int windowCases               //The number of streamed cases mapped at once
+ * CaseStream caseStream         //Streams the cases into the truth table rows, or null when they are all in memory
+ * int checkpointsKept           //The number of newest checkpoints kept when saving every saveInterval iterations
+ * Checkpointer checkpointer     //Writes checkpoints in the background during training, or null when not saving them
+ * double[] errorHistory         //The error after each training iteration, kept in checkpoints
+ * TrainingState resumedState    //The training state resumed from a checkpoint, or null
+ * long seed                     //The seed random weights and the shuffling of streamed cases are drawn from
+ * String[] initSchemes          //The weight initialization of each connectivity layer: "uniform", "xavier" or "he"
+ * String metricsFormat          //The format training measurements are written in: "off", "csv" or "jsonl"
+ * String metricsFile            //The file training measurements are written to
+ * int metricsInterval           //The number of iterations each line of training measurements covers
+ * MetricsRecorder metrics       //Measures training for its listeners, which include the metrics file when one is written
+ * ConcurrentLinkedQueue<InferenceScratch> inferencePool //The working arrays lent to infer calls that bring none
  * 
  * METHODS:
  * 
  * public void setConfigParams(String filePath) throws FileNotFoundException
  * public void setTrainConfigParams()
+ * public void selectKernels(String type)
  * public void allocateArray() 
+ * public int weightIndex(int n, int k, int j)
  * public void allocateTrainArrays() 
  * public void echoRunConfigParams()
  * public void echoTrainConfigParams() 
  * public void printNumActivations() 
  * public void printTruthTable() 
  * public void populateArrays() throws IOException 
+ * public void populateWeights() throws IOException
  * public void loadWeights(String fileName) throws IOException 
+ * public void mapWeights(String fileName) throws IOException
+ * public void resumeTraining(String fileName) throws IOException
+ * public File findCheckpoint(String fileName) throws IOException
+ * public TrainingState trainingState()
  * public void saveWeights(File fileName) throws IOException
  * public void randomizeWeights() 
  * public void loadCases(String fileName) throws IOException 
  * public void reportResults() throws IOException 
  * public double[] run(int caseIndex)
+ * public double[] run(int caseIndex, double[][] caseActivations)
  * public double[][] runForTrain(int caseIndex) 
- * public double activationFunction(double dotProduct)
- * public double activationDerivative(double x) 
- * public double sigmoid(double x) 
- * public double sigmoidDerivative(double x) 
+ * public double[][] runForTrain(int caseIndex, double[][] caseActivations, double[][] caseTheta, double[][] casePsi)
+ * public double[] runFloat(int caseIndex)
+ * public void forwardFloat(int caseIndex, float[][] floatSums, double[][] mixedSums)
+ * public void applyActivation(int n, double[] dotProducts, double[] layerActivations, int count)
+ * public void applyActivation(int n, float[] dotProducts, float[] layerActivations)
+ * public void applyActivation(int n, double[] dotProducts, float[] layerActivations)
+ * public double activationDerivativeFromOutput(int n, double y)
+ * public double caseError(int caseIndex, double[] outputActivations)
+ * public double caseError(int caseIndex, float[] outputActivations)
+ * public double evaluateError()
+ * public double trainCaseEpoch()
+ * public double trainCase(int caseIndex, double[][] caseActivations, double[][] caseTheta, double[][] casePsi)
+ * public double trainCaseFloat(int caseIndex)
+ * public double trainHogwildEpoch()
+ * public double trainBatchEpoch()
+ * public double trainParallelEpoch()
+ * public double computeBatchGradients(int firstCase, int count, BatchScratch scratch)
+ * public void multiplyLayer(double[] layerIn, int count, int n, double[] layerOut)
+ * public void multiplyLayer(float[] layerIn, int n, float[] layerOut)
+ * public void multiplyLayer(float[] layerIn, int n, double[] layerOut)
+ * public void multiplyMappedLayer(double[] layerIn, int n, double[] layerOut)
+ * public void applyGradients(double[] gradients)
+ * public static N_Layer openForInference(String filePath) throws IOException
+ * public InferenceScratch newInferenceScratch(int capacity)
+ * public double[][] infer(double[][] inputs)
+ * public void infer(double[][] inputs, double[][] results, InferenceScratch scratch)
+ * public void inferRow(double[] input, double[] result, InferenceScratch scratch)
+ * public double trainEpoch()
  * public void train() throws IOException 
  * public static void main(String[] args) throws IOException 
  */
 
 public class N_Layer
 {
+   /*
+    * Tile sizes used when multiplying activations by a layer's weights. A tile of K_BLOCK weight rows by
+    * J_BLOCK columns is at most 128 KB, which fits in the L2 cache.
+    */
+   public static final int K_BLOCK = 128;
+   public static final int J_BLOCK = 128;
+
+   /*
+    * The number of inputs run together by the working arrays the network lends to infer
+    */
+   public static final int INFERENCE_BATCH = 32;
+
    /* 
     * Initialize variables
     */ 
@@ -94,7 +190,8 @@ public class N_Layer
    public double[][][] loadedWeights;
    public double[][] truthTable;
    public int trainItersCounter;
-   public double[][][] weights;
+   public double[] weights;
+   public int[] weightOffsets;
    public double deltaWeights;
    public double[][] outputs;
    public double currentError;
@@ -104,6 +201,43 @@ public class N_Layer
    public File saveWeightFile;
    public long timeElapsed;
    public int saveInterval;
+   public int batchSize;
+   public BatchScratch batchScratch;
+   public String kernelType;
+   public Kernels kernels;
+   public int numThreads;
+   public ForkJoinPool trainPool;
+   public BatchScratch[] workerScratch;
+   public String parallelMode;
+   public String precision;
+   public boolean useFloat;
+   public boolean mixedPrecision;
+   public float[] floatWeights;
+   public float[][] floatActivations;
+   public float[][] floatTheta;
+   public float[][] floatPsi;
+   public String errorMode;
+   public String[] activationNames;
+   public Activation[] activationFunctions;
+   public SigmoidTable sigmoidTable;
+   public String weightFormat;
+   public WeightFile mappedWeights;
+   public ByteBuffer mappedPayload;
+   public String caseSource;
+   public int shuffleCases;
+   public int windowCases;
+   public CaseStream caseStream;
+   public int checkpointsKept;
+   public Checkpointer checkpointer;
+   public double[] errorHistory;
+   public TrainingState resumedState;
+   public long seed;
+   public String[] initSchemes;
+   public String metricsFormat;
+   public String metricsFile;
+   public int metricsInterval;
+   public MetricsRecorder metrics;
+   public ConcurrentLinkedQueue<InferenceScratch> inferencePool;
 
 
    /*
@@ -148,9 +282,200 @@ public class N_Layer
       saveWeightsDecide = scan.nextLine();
       saveWeightFile = new File(scan.nextLine());
       saveInterval = scan.nextInt();
+
+      batchSize = 1;
+      if (scan.hasNextInt())
+      {
+         batchSize = scan.nextInt();
+      }
+
+      kernelType = "scalar";
+      if (scan.hasNext())
+      {
+         kernelType = scan.next();
+      }
+
+      numThreads = 1;
+      if (scan.hasNextInt())
+      {
+         numThreads = scan.nextInt();
+      }
+
+      parallelMode = "sync";
+      if (scan.hasNext())
+      {
+         parallelMode = scan.next();
+         if (!parallelMode.equals("sync") && !parallelMode.equals("hogwild"))
+         {
+            throw new IllegalArgumentException("Unknown parallel mode " + parallelMode + ", expected sync or hogwild");
+         }
+      } // if (scan.hasNext())
+
+      precision = "double";
+      if (scan.hasNext())
+      {
+         precision = scan.next();
+         if (!precision.equals("double") && !precision.equals("float") && !precision.equals("mixed"))
+         {
+            throw new IllegalArgumentException("Unknown precision " + precision + ", expected double, float or mixed");
+         }
+      } // if (scan.hasNext())
+
+      errorMode = "afterCase";
+      if (scan.hasNext())
+      {
+         errorMode = scan.next();
+         if (!errorMode.equals("afterCase") && !errorMode.equals("beforeUpdate") && !errorMode.equals("afterEpoch"))
+         {
+            throw new IllegalArgumentException("Unknown error mode " + errorMode + 
+                                               ", expected afterCase, beforeUpdate or afterEpoch");
+         }
+      } // if (scan.hasNext())
+
+      activationNames = new String[numLayers + 1];
+      boolean namesGiven = scan.hasNext();
+      for (int n = 1; n <= numLayers; n++)
+      {
+         activationNames[n] = namesGiven ? scan.next() : "sigmoid";
+      }
+
+      sigmoidTable = null;
+      if (scan.hasNextDouble())
+      {
+         double limit = scan.nextDouble();
+         sigmoidTable = new SigmoidTable(limit, scan.nextInt());
+      }
+      else if (scan.hasNext())
+      {
+         scan.next();
+      }
+
+      weightFormat = "text";
+      if (scan.hasNext())
+      {
+         weightFormat = scan.next();
+      }
+
+      caseSource = "memory";
+      if (scan.hasNext())
+      {
+         caseSource = scan.next();
+         if (caseSource.equals("stream"))
+         {
+            shuffleCases = scan.nextInt();
+            windowCases = scan.nextInt();
+         }
+      } // if (scan.hasNext())
+
+      checkpointsKept = 3;
+      if (scan.hasNextInt())
+      {
+         checkpointsKept = scan.nextInt();
+      }
+
+      seed = new SplittableRandom().nextLong();
+      if (scan.hasNextLong())
+      {
+         seed = scan.nextLong();
+      }
+      else if (scan.hasNext())
+      {
+         scan.next();
+      }
+
+      initSchemes = new String[numLayers];
+      boolean schemesGiven = scan.hasNext();
+      for (int n = 0; n < numLayers; n++)
+      {
+         initSchemes[n] = schemesGiven ? scan.next() : "uniform";
+         WeightInitializer.checkScheme(initSchemes[n]);
+      }
+
+      metricsFormat = "off";
+      metricsInterval = 1;
+      if (scan.hasNext())
+      {
+         metricsFormat = scan.next();
+         if (!metricsFormat.equals("off"))
+         {
+            metricsFile = scan.next();
+            metricsInterval = scan.nextInt();
+         }
+      } // if (scan.hasNext())
+
+      activationFunctions = new Activation[numLayers + 1];
+      boolean tableUsed = false;
+      for (int n = 1; n <= numLayers; n++)
+      {
+         activationFunctions[n] = Activation.forName(activationNames[n], sigmoidTable);
+         tableUsed = tableUsed || activationFunctions[n] instanceof Activation.LookupSigmoid;
+         if (!(activationFunctions[n] instanceof Activation.Elementwise) && n != numLayers)
+         {
+            throw new IllegalArgumentException(activationNames[n] + " can only be used on the output layer");
+         }
+      } // for (int n = 1; n <= numLayers; n++)
+      if (sigmoidTable != null && !tableUsed)
+      {
+         System.out.println("No layer uses the sigmoid, so the sigmoid lookup table is ignored.");
+         sigmoidTable = null;
+      }
+
+      useFloat = !precision.equals("double");
+      mixedPrecision = precision.equals("mixed");
+      if (useFloat && (batchSize > 1 || numThreads > 1))
+      {
+         System.out.println("Single precision trains one case at a time on one thread, so the batch size and thread count are set to 1.");
+         batchSize = 1;
+         numThreads = 1;
+      }
+      if (caseSource.equals("stream") && (batchSize > 1 || numThreads > 1))
+      {
+         System.out.println("Streamed cases are trained one at a time on one thread, so the batch size and thread count are set to 1.");
+         batchSize = 1;
+         numThreads = 1;
+      }
+      if (parallelMode.equals("hogwild") && numThreads > 1 && batchSize > 1)
+      {
+         System.out.println("Hogwild threads modify the weights after every case, so the batch size is set to 1.");
+         batchSize = 1;
+      }
+      if (!parallelMode.equals("hogwild") && numThreads > 1 && batchSize == 1)
+      {
+         System.out.println("Synchronous threads split each mini-batch, so with a batch size of 1 the thread count is set to 1.");
+         numThreads = 1;
+      }
+      if (loadOrRand.equals("map") && trainOrRun.equals("train"))
+      {
+         throw new IllegalArgumentException("Mapped weights are read-only, so they can only be used when running");
+      }
       scan.close();
+      selectKernels(kernelType);
    } // public void setConfigParams(String filePath) throws FileNotFoundException
 
+   /*
+    * Chooses the implementation of the inner loops. The vectorized kernels are loaded by name, so the network
+    * still compiles and runs when the jdk.incubator.vector module or the VectorKernels class is missing, in 
+    * which case the scalar kernels are used instead.
+    *
+    * @param type   "vector" for the Vector API kernels, anything else for the scalar kernels
+    */
+   public void selectKernels(String type)
+   {
+      kernels = new ScalarKernels();
+      if (type.equals("vector"))
+      {
+         try 
+         {
+            kernels = (Kernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+         }
+         catch (ReflectiveOperationException | LinkageError e) 
+         {
+            System.out.println("Vector kernels are unavailable (" + e + "), using scalar kernels.");
+            kernelType = "scalar";
+         }
+      } // if (type.equals("vector"))
+   } // public void selectKernels(String type)
+
    /*
     * Sets the values of the configuration parameters used in training. This method is not currently used. 
     * Instead, values are set using a configuration file in setConfigParams.
@@ -168,30 +493,116 @@ public class N_Layer
     */
    public void allocateArray() 
    {
-      int maxActivations = 0;
+      activations = new double[numLayers + 1][];
       for (int n = 0; n <= numLayers; n++) 
       {
-         maxActivations = Math.max(numActivations[n], maxActivations);
+         activations[n] = new double[numActivations[n]];
       }
 
-      activations = new double[numLayers + 1][maxActivations];
-      truthTable = new double[numCases][numActivations[0] + numActivations[numLayers]];
-      weights = new double[numLayers][maxActivations][maxActivations];
-      outputs = new double[numCases][numActivations[numLayers]];
+      inferencePool = new ConcurrentLinkedQueue<InferenceScratch>();
+
+      int tableRows = caseSource.equals("stream") ? Math.min(shuffleCases, numCases) : numCases;
+      truthTable = new double[tableRows][numActivations[0] + numActivations[numLayers]];
+
+      weightOffsets = new int[numLayers + 1];
+      for (int n = 0; n < numLayers; n++)
+      {
+         weightOffsets[n + 1] = weightOffsets[n] + numActivations[n] * numActivations[n + 1];
+      }
+      boolean mapped = loadOrRand.equals("map");
+      if (useFloat && !mapped)
+      {
+         floatWeights = new float[weightOffsets[numLayers]];
+         floatActivations = new float[numLayers + 1][];
+         for (int n = 0; n <= numLayers; n++) 
+         {
+            floatActivations[n] = new float[numActivations[n]];
+         }
+      } // if (useFloat && !mapped)
+      else if (!mapped)
+      {
+         weights = new double[weightOffsets[numLayers]];
+      }
+      outputs = new double[tableRows][numActivations[numLayers]];
    } // public void allocateArray() 
 
    /*
-    * Allocates space to the arrays used for training
+    * Computes where the weight connecting activation k of layer n to activation j of layer n + 1 is stored.
+    * Each layer's block is stored row by row, so the weights leaving one activation are contiguous.
+    *
+    * @param n   the connectivity layer of the weight
+    * @param k   the activation in layer n
+    * @param j   the activation in layer n + 1
+    * @return    the index of the weight in the weights array
+    */
+   public int weightIndex(int n, int k, int j)
+   {
+      return weightOffsets[n] + k * numActivations[n + 1] + j;
+   }
+
+   /*
+    * Allocates space to the arrays used for training. The input layer has no theta or psi values,
+    * so only the layers after it are given space.
     */
    public void allocateTrainArrays() 
    {
-      int maxActivations = 0;
-      for (int n = 0; n <= numLayers; n++) 
+      psi = new double[numLayers + 1][];
+      theta = new double[numLayers + 1][];
+      psi[0] = new double[0];
+      theta[0] = new double[0];
+      for (int n = 1; n <= numLayers; n++) 
+      {
+         psi[n] = new double[numActivations[n]];
+         theta[n] = new double[numActivations[n]];
+      }
+
+      if (useFloat)
+      {
+         floatPsi = new float[numLayers + 1][];
+         floatTheta = new float[numLayers + 1][];
+         for (int n = 0; n <= numLayers; n++) 
+         {
+            floatPsi[n] = new float[n == 0 ? 0 : numActivations[n]];
+            floatTheta[n] = new float[n == 0 ? 0 : numActivations[n]];
+         }
+      } // if (useFloat)
+
+      if (batchSize > 1)
+      {
+         batchScratch = new BatchScratch(numActivations, numLayers, Math.min(batchSize, numCases), weights.length);
+      }
+
+      if (numThreads > 1 && parallelMode.equals("hogwild"))
+      {
+         trainPool = new ForkJoinPool(numThreads);
+         workerScratch = new BatchScratch[numThreads];
+         for (int t = 0; t < numThreads; t++)
+         {
+            workerScratch[t] = new BatchScratch(numActivations, numLayers, 1, 0);
+         }
+      } // if (numThreads > 1 && parallelMode.equals("hogwild"))
+      else if (batchSize > 1 && numThreads > 1)
+      {
+         int shardSize = (batchScratch.capacity + numThreads - 1) / numThreads;
+         trainPool = new ForkJoinPool(numThreads);
+         workerScratch = new BatchScratch[numThreads];
+         for (int t = 0; t < numThreads; t++)
+         {
+            workerScratch[t] = new BatchScratch(numActivations, numLayers, shardSize, weights.length);
+         }
+      } // if (batchSize > 1 && numThreads > 1)
+
+      if (errorHistory == null)
+      {
+         errorHistory = new double[maxTrainIters];
+      }
+
+      if (saveWeightsDecide.equals("save") && saveInterval > 0)
       {
-         maxActivations = Math.max(numActivations[n], maxActivations);
+         checkpointer = new Checkpointer(new File(saveWeightFile.getName()), numActivations, weightOffsets[numLayers], 
+                                         useFloat, !weightFormat.equals("text"), checkpointsKept);
       }
-      psi = new double[numLayers + 1][maxActivations];
-      theta = new double[numLayers + 1][maxActivations];
+      metrics = new MetricsRecorder(metricsInterval);
    } // public void allocateTrainArrays() 
 
    /*
@@ -207,6 +618,11 @@ public class N_Layer
 
       System.out.println("\nNumber of Layers: " + numLayers);
       System.out.println("\nTraining or Running: " + trainOrRun);
+      if (mappedWeights != null)
+      {
+         System.out.println("\nWeights mapped from " + weightFile + " (" + 
+                            (mappedWeights.dtype == WeightFile.DTYPE_FLOAT64 ? "float64" : "float32") + ")");
+      }
 
       printTruthTable();
       System.out.println();
@@ -231,8 +647,39 @@ public class N_Layer
       System.out.println("\nLearning factor (lambda): " + learningFactor + "\n");
       System.out.println("Max number of training iterations: " + maxTrainIters + "\n");
       System.out.println("Random Number Range: " + weightRange[0] + ", " + weightRange[1] + "\n");
+      System.out.print("Weight initialization: seed " + seed + ", ");
+      for (int n = 0; n < numLayers - 1; n++) 
+      {
+         System.out.print(initSchemes[n] + ", ");
+      }
+      System.out.println(initSchemes[numLayers - 1] + "\n");
       System.out.println("Weights randomized or loaded: " + loadOrRand + "\n");
       System.out.println("Error Threshold: " + errorThreshold + "\n");
+      System.out.println("Batch size: " + batchSize + "\n");
+      System.out.println("Kernels: " + kernelType + "\n");
+      System.out.println("Precision: " + precision + "\n");
+      System.out.println("Error measured: " + errorMode + "\n");
+      System.out.print("Activation functions: ");
+      for (int n = 1; n < numLayers; n++) 
+      {
+         System.out.print(activationNames[n] + ", ");
+      }
+      System.out.println(activationNames[numLayers] + "\n");
+      if (sigmoidTable != null)
+      {
+         System.out.println("Sigmoid lookup table: [" + -sigmoidTable.limit + ", " + sigmoidTable.limit + "], " + 
+                            sigmoidTable.stepsPerUnit + " steps per unit\n");
+      }
+      System.out.println("Training threads: " + numThreads + " (" + parallelMode + ")\n");
+      if (checkpointer != null)
+      {
+         System.out.println("Checkpoints: every " + saveInterval + " iterations, newest " + checkpointsKept + " kept\n");
+      }
+      System.out.println("Weight file format: " + weightFormat + "\n");
+      if (!metricsFormat.equals("off"))
+      {
+         System.out.println("Metrics: " + metricsFormat + " to " + metricsFile + ", every " + metricsInterval + " iterations\n");
+      }
    } // public void echoTrainConfigParams()
 
    /*
@@ -252,6 +699,12 @@ public class N_Layer
     */
    public void printTruthTable() 
    {
+      if (caseStream != null)
+      {
+         System.out.println("\n" + numCases + " cases streamed from " + nodeFile + " through " + truthTable.length + 
+                            " rows, " + windowCases + " cases mapped at a time");
+         return;
+      }
       for (int r = 0; r < numCases; r++)
       {
          for (int c = numActivations[0]; c < numActivations[0] + numActivations[numLayers]; c++)
@@ -266,43 +719,167 @@ public class N_Layer
     * Adds data to each array
     */
    public void populateArrays() throws IOException 
+   {
+      populateWeights();
+      loadCases(nodeFile);
+      if (resumedState != null && caseStream != null && resumedState.random.length > 0)
+      {
+         caseStream.random = TrainingState.loadRandom(resumedState.random);
+      }
+   } // public void populateArrays() throws IOException
+
+   /*
+    * Loads, maps, resumes or randomizes the weights as loadOrRand selects
+    */
+   public void populateWeights() throws IOException
    {
       if (loadOrRand.equals("load")) 
       {
          loadWeights(weightFile);
       } 
+      else if (loadOrRand.equals("map"))
+      {
+         mapWeights(weightFile);
+      }
+      else if (loadOrRand.equals("resume"))
+      {
+         resumeTraining(weightFile);
+      }
       else 
       {
          randomizeWeights();
       }
-
-      loadCases(nodeFile);
-   } // public void populateArrays() throws IOException
+   } // public void populateWeights() throws IOException
 
    /*
-    * Loads weights from a given file into the weights array
+    * Loads weights from a given file into the weights array. Binary weight files are recognized by their
+    * magic number and memory-mapped; any other file is read as text.
     *
     * @param fileName   the given file to load weights from
+    * @throws IOException if a binary weight file is for a different network or fails its checksum
     */
    public void loadWeights(String fileName) throws IOException 
    {
+      File file = new File(fileName);
+      if (WeightFile.isWeightFile(file))
+      {
+         WeightFile weightFile = WeightFile.open(file);
+         weightFile.checkTopology(numActivations);
+         weightFile.verifyChecksum();
+         if (useFloat)
+         {
+            weightFile.read(floatWeights);
+         }
+         else
+         {
+            weightFile.read(weights);
+         }
+         return;
+      } // if (WeightFile.isWeightFile(file))
+
       Scanner scan = new Scanner(new File(fileName));
-      for (int n = 0; n < numLayers; n++) 
+      if (useFloat)
       {
-         for (int k = 0; k < numActivations[n]; k++) 
+         for (int w = 0; w < floatWeights.length; w++) 
          {
-            for (int j = 0; j < numActivations[n + 1]; j++) 
-            {
-               weights[n][k][j] = (scan.nextDouble());
-               //System.out.print(j);
-            }
+            floatWeights[w] = scan.nextFloat();
          }
-      } // for (int n = 0; n < numLayers; n++)
+      }
+      else
+      {
+         for (int w = 0; w < weights.length; w++) 
+         {
+            weights[w] = (scan.nextDouble());
+         }
+      }
       scan.close();
    } // public void loadWeights(String fileName) throws IOException
 
    /*
-    * Saves the weights to a given file
+    * Maps a binary weight file so that running reads the weights from it in place. No copy of the weights is
+    * made on the heap, so processes running the same weight file share one copy of it in the page cache.
+    *
+    * @param fileName   the binary weight file to map
+    * @throws IOException if the file is not a binary weight file, is for a different network or fails its 
+    *                     checksum
+    */
+   public void mapWeights(String fileName) throws IOException
+   {
+      mappedWeights = WeightFile.open(new File(fileName));
+      mappedWeights.checkTopology(numActivations);
+      mappedWeights.verifyChecksum();
+      mappedPayload = mappedWeights.payload();
+   } // public void mapWeights(String fileName) throws IOException
+
+   /*
+    * Loads the weights of a checkpoint along with the iteration counter, learning factor and error history 
+    * saved beside them, so that training continues where the checkpoint was taken. The generator that shuffles 
+    * streamed cases is restored once the cases are opened.
+    *
+    * @param fileName   a checkpoint, or the save file whose newest checkpoint should be resumed
+    * @throws IOException if there is no checkpoint to resume or it cannot be read
+    */
+   public void resumeTraining(String fileName) throws IOException
+   {
+      File checkpoint = findCheckpoint(fileName);
+      loadWeights(checkpoint.getPath());
+      resumedState = TrainingState.read(Checkpointer.stateFile(checkpoint));
+      trainItersCounter = resumedState.iteration;
+      learningFactor = resumedState.learningFactor;
+      errorHistory = Arrays.copyOf(resumedState.errorHistory, Math.max(maxTrainIters, resumedState.iteration));
+      System.out.println("Resuming from " + checkpoint + " at iteration " + trainItersCounter + "\n");
+   } // public void resumeTraining(String fileName) throws IOException
+
+   /*
+    * Finds the checkpoint to resume from. A checkpoint with a training state beside it is used as is; otherwise
+    * the name is taken as a save file, and its checkpoint with the highest iteration that has a training state is 
+    * used.
+    *
+    * @param fileName   a checkpoint or a save file
+    * @return           the checkpoint's weight file
+    * @throws IOException if no checkpoint with a training state is found
+    */
+   public File findCheckpoint(String fileName) throws IOException
+   {
+      File named = new File(fileName);
+      if (Checkpointer.stateFile(named).exists())
+      {
+         return named;
+      }
+
+      File newest = null;
+      for (File candidate : Checkpointer.listCheckpoints(named))
+      {
+         if (candidate.exists() && Checkpointer.stateFile(candidate).exists())
+         {
+            newest = candidate;
+         }
+      }
+
+      if (newest == null)
+      {
+         throw new IOException("There is no checkpoint of " + fileName + " to resume from");
+      }
+      return newest;
+   } // public File findCheckpoint(String fileName) throws IOException
+
+   /*
+    * Captures the training state that a checkpoint keeps besides the weights
+    *
+    * @return   the iteration counter, learning factor, error history and shuffling generator
+    */
+   public TrainingState trainingState()
+   {
+      TrainingState state = new TrainingState();
+      state.iteration = trainItersCounter;
+      state.learningFactor = learningFactor;
+      state.errorHistory = Arrays.copyOf(errorHistory, trainItersCounter);
+      state.random = TrainingState.saveRandom(caseStream != null ? caseStream.random : null);
+      return state;
+   } // public TrainingState trainingState()
+
+   /*
+    * Saves the weights to a given file, as text or in the binary weight file format depending on weightFormat
     * 
     * @param fileName   the given file to save the weights to
     */
@@ -311,20 +888,50 @@ public class N_Layer
       fileName = new File(fileName.getName());
       try 
       {
+         if (weightFormat.equals("binary"))
+         {
+            if (useFloat)
+            {
+               WeightFile.write(fileName, numActivations, floatWeights);
+            }
+            else
+            {
+               WeightFile.write(fileName, numActivations, weights);
+            }
+            return;
+         } // if (weightFormat.equals("binary"))
+         if (weightFormat.equals("both"))
+         {
+            File binaryFile = new File(fileName.getName() + ".bin");
+            if (useFloat)
+            {
+               WeightFile.write(binaryFile, numActivations, floatWeights);
+            }
+            else
+            {
+               WeightFile.write(binaryFile, numActivations, weights);
+            }
+         } // if (weightFormat.equals("both"))
+
          BufferedWriter myWriter = new BufferedWriter(new FileWriter(fileName));
          
          String weight;
-         for (int n = 0; n < numLayers; n++) 
+         if (useFloat)
          {
-            for (int k = 0; k < numActivations[n]; k++) 
+            for (int w = 0; w < floatWeights.length; w++) 
             {
-               for (int j = 0; j < numActivations[n + 1]; j++) 
-               {
-                  weight = weights[n][k][j] + " ";
-                  myWriter.write(weight);
-               }
-            } // for (int k = 0; k < numActivations[n]; k++)
-         } // for (int n = 0; n < numLayers; n++)
+               weight = floatWeights[w] + " ";
+               myWriter.write(weight);
+            }
+         }
+         else
+         {
+            for (int w = 0; w < weights.length; w++) 
+            {
+               weight = weights[w] + " ";
+               myWriter.write(weight);
+            }
+         }
          myWriter.flush();  
          myWriter.close();
       } //try
@@ -336,41 +943,57 @@ public class N_Layer
    } // public void saveWeights(String fileName) throws IOException
 
    /*
-    * Randomizes the weights in the weights array for training
+    * Randomizes the weights in the weights array for training, drawing them from the seed with each layer's 
+    * initialization scheme, so the same seed gives the same weights
     */
    public void randomizeWeights() 
    {
-      double low = weightRange[0];
-      double high = weightRange[1];
-
-      for (int n = 0; n < numLayers; n++) 
-      {
-         for (int k = 0; k < numActivations[n]; k++) 
-         {
-            for (int j = 0; j < numActivations[n + 1]; j++) 
-            {
-               weights[n][k][j] = (Math.random() * (high - low)) + low;
-            }
-         }
-      } // for (int n = 0; n < numLayers; n++)
+      WeightInitializer.initialize(useFloat ? null : weights, useFloat ? floatWeights : null, weightOffsets, 
+                                   numActivations, initSchemes, weightRange, seed);
    } // public void randomizeWeights()
 
    /*
-    * Reads and stores the values of a given truth table file in the truthTable array
+    * Reads and stores the values of a given truth table file in the truthTable array. Binary datasets are
+    * recognized by their magic number and mapped; any other file is parsed as text in parallel with CaseParser.
+    * When cases are streamed, the binary dataset is only opened, and each pass reads it into the rows again.
     * 
     * @param fileName   the given file to load the test cases from
+    * @throws IOException if the file holds a malformed value or too few values, naming the case and column, or
+    *                     if a binary dataset has the wrong widths or fails its checksum
     */
    public void loadCases(String fileName) throws IOException 
    {
-      Scanner scan = new Scanner(new File(fileName));
-      for (int r = 0; r < numCases; r++) 
+      FlightEvents.DatasetLoad event = new FlightEvents.DatasetLoad();
+      event.begin();
+      File file = new File(fileName);
+      event.format = "text";
+      if (caseSource.equals("stream"))
       {
-         for (int c = 0; c < numActivations[0] + numActivations[numLayers]; c++) 
-         {
-            truthTable[r][c] = (scan.nextDouble());
-         }
+         event.format = "stream";
+         caseStream = new CaseStream(file, numCases, truthTable, windowCases, numActivations[0], 
+                                     numActivations[numLayers]);
+         caseStream.random = new Random(seed);
+      }
+      else if (DatasetFile.isDatasetFile(file))
+      {
+         event.format = "binary";
+         DatasetFile dataset = DatasetFile.open(file);
+         dataset.checkShape(numCases, numActivations[0], numActivations[numLayers]);
+         dataset.verifyChecksum();
+         dataset.read(truthTable, numCases);
+      }
+      else
+      {
+         CaseParser.parse(fileName, truthTable, numCases, numActivations[0] + numActivations[numLayers]);
+      }
+
+      if (event.shouldCommit())
+      {
+         event.path = fileName;
+         event.cases = numCases;
+         event.bytes = file.length();
+         event.commit();
       }
-      scan.close();
    } // public void loadCases(String fileName) throws IOException
 
    /*
@@ -378,8 +1001,15 @@ public class N_Layer
     */
    public void reportResults() throws IOException 
    {
-      System.out.println("Calculated outputs:");
-      for (int r = 0; r < numCases; r++) // Iterates over the number of cases in the truth table
+      if (caseStream != null)
+      {
+         System.out.println("Average error over the " + numCases + " streamed cases: " + evaluateError() / numCases);
+      }
+      else
+      {
+         System.out.println("Calculated outputs:");
+      }
+      for (int r = 0; r < numCases && caseStream == null; r++) // Iterates over the number of cases in the truth table
       {
          /*for (int c = 0; c < numActivations[0]; c++)
          {
@@ -412,206 +1042,1031 @@ public class N_Layer
     */
    public double[] run(int caseIndex) 
    {
-      for (int input = 0; input < numActivations[0]; input++) 
+      FlightEvents.ForwardPass event = new FlightEvents.ForwardPass();
+      event.begin();
+      double[] result;
+      if (useFloat && mappedPayload == null)
       {
-         activations[0][input] = truthTable[caseIndex][input];
+         result = runFloat(caseIndex);
       }
-
-      double calcTheta = 0.0;
-
-      for (int n = 0; n < numLayers; n++) 
-      {
-         for (int j = 0; j < numActivations[n + 1]; j++) 
-         {
-            calcTheta = 0.0;
-            for (int k = 0; k < numActivations[n]; k++) 
-            {
-               calcTheta += activations[n][k] * weights[n][k][j];
-            }
-            activations[n + 1][j] = activationFunction(calcTheta);
-         } // for (int j = 0; j < numActivations[n + 1]; j++)
-      } // for (int n = 0; n < numLayers; n++)
-
-      for (int i = 0; i < numActivations[numLayers]; i++) 
+      else
       {
-         outputs[caseIndex][i] = activations[numLayers][i];
+         result = run(caseIndex, activations);
       }
-      return outputs[caseIndex];
+
+      event.commitSampled(caseIndex, 1, false);
+      return result;
    } // public double[] run(int caseIndex)
 
    /*
-    * Runs the network and calculates the outputs after modifying the activation
-    * values for each training case from a given truth table and calculates values used in training
+    * Runs the network for one case using the given activation arrays, so that several threads can run cases
+    * at the same time
+    *
+    * @param caseIndex         the case that the network is being run for
+    * @param caseActivations   the activation arrays to use, one per layer
+    * @return                  the output value for the given case
+    */
+   public double[] run(int caseIndex, double[][] caseActivations) 
+   {
+      for (int input = 0; input < numActivations[0]; input++) 
+      {
+         caseActivations[0][input] = truthTable[caseIndex][input];
+      }
+
+      for (int n = 0; n < numLayers; n++) 
+      {
+         if (mappedPayload != null)
+         {
+            multiplyMappedLayer(caseActivations[n], n, caseActivations[n + 1]);
+         }
+         else
+         {
+            multiplyLayer(caseActivations[n], 1, n, caseActivations[n + 1]);
+         }
+         applyActivation(n + 1, caseActivations[n + 1], caseActivations[n + 1], 1);
+      } // for (int n = 0; n < numLayers; n++)
+
+      for (int i = 0; i < numActivations[numLayers]; i++) 
+      {
+         outputs[caseIndex][i] = caseActivations[numLayers][i];
+      }
+      return outputs[caseIndex];
+   } // public double[] run(int caseIndex, double[][] caseActivations)
+
+   /*
+    * Runs the network and calculates the outputs after modifying the activation
+    * values for each training case from a given truth table and calculates values used in training
     *
     * @param caseIndex   the case that the network is being trained for
     * @return psi        the calculated psi value used in training
     */
    public double[][] runForTrain(int caseIndex) 
    {
+      return runForTrain(caseIndex, activations, theta, psi);
+   }
+
+   /*
+    * Runs the network for one training case using the given working arrays, so that several threads can train
+    * on cases at the same time
+    *
+    * @param caseIndex         the case that the network is being trained for
+    * @param caseActivations   the activation arrays to use, one per layer
+    * @param caseTheta         the theta arrays to use, one per layer
+    * @param casePsi           the psi arrays to use, one per layer
+    * @return casePsi          the calculated psi value used in training
+    */
+   public double[][] runForTrain(int caseIndex, double[][] caseActivations, double[][] caseTheta, double[][] casePsi) 
+   {
+      FlightEvents.ForwardPass event = new FlightEvents.ForwardPass();
+      event.begin();
       for (int input = 0; input < numActivations[0]; input++) 
       {
-         activations[0][input] = truthTable[caseIndex][input];
+         caseActivations[0][input] = truthTable[caseIndex][input];
       }
 
-      double calcTheta = 0.0;
+      for (int n = 0; n < numLayers; n++) 
+      {
+         multiplyLayer(caseActivations[n], 1, n, caseTheta[n + 1]);
+         applyActivation(n + 1, caseTheta[n + 1], caseActivations[n + 1], 1);
+      } // for (int n = 0; n < numLayers; n++) 
+
+      //psi for output layer
+      for (int j = 0; j < numActivations[numLayers]; j++) 
+      {
+         casePsi[numLayers][j] = truthTable[caseIndex][j + numActivations[0]] - caseActivations[numLayers][j];
+      }
+      activationFunctions[numLayers].outputPsi(caseActivations[numLayers], casePsi[numLayers], 0, numActivations[numLayers]);
+
+      event.commitSampled(caseIndex, 1, true);
+      return casePsi;
+   } // public double[][] runForTrain(int caseIndex, double[][] caseActivations, double[][] caseTheta, double[][] casePsi)
+
+   /*
+    * Runs the network for one case with single precision weights and activations
+    *
+    * @param caseIndex   the case that the network is being run for
+    * @return            the output value for the given case
+    */
+   public double[] runFloat(int caseIndex)
+   {
+      forwardFloat(caseIndex, floatActivations, activations);
+
+      for (int i = 0; i < numActivations[numLayers]; i++) 
+      {
+         outputs[caseIndex][i] = floatActivations[numLayers][i];
+      }
+      return outputs[caseIndex];
+   } // public double[] runFloat(int caseIndex)
+
+   /*
+    * Computes the single precision activations of every layer for one case. In float precision the dot products
+    * are summed in floatSums, and in mixed precision they are summed in the double precision mixedSums, before 
+    * the activation function is applied.
+    *
+    * @param caseIndex   the case that the network is being run for
+    * @param floatSums   receives each layer's dot products in float precision, which may be floatActivations
+    * @param mixedSums   receives each layer's dot products in mixed precision
+    */
+   public void forwardFloat(int caseIndex, float[][] floatSums, double[][] mixedSums)
+   {
+      for (int input = 0; input < numActivations[0]; input++) 
+      {
+         floatActivations[0][input] = (float) truthTable[caseIndex][input];
+      }
 
       for (int n = 0; n < numLayers; n++) 
       {
-         for (int j = 0; j < numActivations[n + 1]; j++) 
+         if (mixedPrecision)
          {
-            calcTheta = 0.0;
-            for (int k = 0; k < numActivations[n]; k++) 
-            {
-               calcTheta += activations[n][k] * weights[n][k][j];
-            }
+            multiplyLayer(floatActivations[n], n, mixedSums[n + 1]);
+            applyActivation(n + 1, mixedSums[n + 1], floatActivations[n + 1]);
+         }
+         else
+         {
+            multiplyLayer(floatActivations[n], n, floatSums[n + 1]);
+            applyActivation(n + 1, floatSums[n + 1], floatActivations[n + 1]);
+         }
+      } // for (int n = 0; n < numLayers; n++)
+   } // public void forwardFloat(int caseIndex, float[][] floatSums, double[][] mixedSums)
 
-            theta[n + 1][j] = calcTheta;
-            activations[n + 1][j] = activationFunction(calcTheta);
-         } // for (int j = 0; j < numActivations[n + 1]; j++)
-      } // for (int n = 0; n < numLayers; n++) 
+   /*
+    * Computes the activation function of layer n for the dot products of a batch of cases. Exact sigmoid layers
+    * use the selected kernels, and softmax is applied to each case's dot products separately.
+    *
+    * @param n                  the layer the dot products belong to
+    * @param dotProducts        the dot products of the layer for each case, stored row by row
+    * @param layerActivations   receives the activations, which may be the same array as dotProducts
+    * @param count              the number of cases
+    */
+   public void applyActivation(int n, double[] dotProducts, double[] layerActivations, int count)
+   {
+      Activation layerActivation = activationFunctions[n];
+      int width = numActivations[n];
 
-      int n = numLayers - 1;
-      //loop for output layer
-      for (int j = 0; j < numActivations[n + 1]; j++) 
+      if (layerActivation instanceof Activation.Sigmoid)
+      {
+         kernels.sigmoid(dotProducts, layerActivations, count * width);
+      }
+      else if (layerActivation instanceof Activation.Elementwise)
       {
-         calcTheta = 0.0;
-         for (int k = 0; k < numActivations[n]; k++) 
+         layerActivation.applyLayer(dotProducts, layerActivations, 0, count * width);
+      }
+      else
+      {
+         for (int b = 0; b < count; b++)
          {
-            calcTheta += activations[n][k] * weights[n][k][j];
-            psi[numLayers][j] = (truthTable[caseIndex][j + numActivations[0]] - activations[numLayers][j]) * activationDerivative(theta[numLayers][j]);
+            layerActivation.applyLayer(dotProducts, layerActivations, b * width, width);
          }
+      }
+   } // public void applyActivation(int n, double[] dotProducts, double[] layerActivations, int count)
 
-         theta[n + 1][j] = calcTheta;
-         activations[n + 1][j] = activationFunction(calcTheta);
-      } // for (int j = 0; j < numActivations[n + 1]; j++) 
+   /*
+    * Computes the activation function of layer n for one case's single precision dot products
+    *
+    * @param n                  the layer the dot products belong to
+    * @param dotProducts        the dot products of the layer
+    * @param layerActivations   receives the activations, which may be the same array as dotProducts
+    */
+   public void applyActivation(int n, float[] dotProducts, float[] layerActivations)
+   {
+      if (activationFunctions[n] instanceof Activation.Sigmoid)
+      {
+         kernels.sigmoid(dotProducts, layerActivations, numActivations[n]);
+      }
+      else
+      {
+         activationFunctions[n].applyLayer(dotProducts, layerActivations, 0, numActivations[n]);
+      }
+   } // public void applyActivation(int n, float[] dotProducts, float[] layerActivations)
 
-      return psi;
-   } // public double[][] runForTrain(int caseIndex)
+   /*
+    * Computes the single precision activations of layer n for one case's dot products summed in double 
+    * precision. The activations are first computed in double precision in place of the dot products.
+    *
+    * @param n                  the layer the dot products belong to
+    * @param dotProducts        the dot products of the layer, which are overwritten
+    * @param layerActivations   receives the activations
+    */
+   public void applyActivation(int n, double[] dotProducts, float[] layerActivations)
+   {
+      applyActivation(n, dotProducts, dotProducts, 1);
+      for (int j = 0; j < numActivations[n]; j++)
+      {
+         layerActivations[j] = (float) dotProducts[j];
+      }
+   } // public void applyActivation(int n, double[] dotProducts, float[] layerActivations)
 
    /*
-    * Computes an activation function
+    * Computes the derivative of the activation function of layer n from the activation value it produced, which
+    * training keeps from the forward pass, so the backward pass never has to evaluate the function again. Only
+    * the output layer may have a layer-wide activation, so every hidden layer's is elementwise.
     *
-    * @param dotProduct the dot product of an activation value and a corresponding
-    * weight
+    * @param n the hidden layer of the activation
+    * @param y the output of the activation function
     */
-   public double activationFunction(double dotProduct) 
+   public double activationDerivativeFromOutput(int n, double y) 
    {
-      return sigmoid(dotProduct);
+      return ((Activation.Elementwise) activationFunctions[n]).derivativeFromOutput(y);
    }
 
    /*
-    * Computes the derivative of an activation function
+    * Computes the error of one case from the outputs of the network for it
     *
-    * @param x the variable of the activation function
+    * @param caseIndex           the case the outputs were calculated for
+    * @param outputActivations   the activations of the output layer
+    * @return                    half the sum of the squared differences between the targets and the outputs
     */
-   public double activationDerivative(double x) 
+   public double caseError(int caseIndex, double[] outputActivations)
    {
-      return sigmoidDerivative(x);
-   }
+      double error = 0.0;
+      for (int i = 0; i < numActivations[numLayers]; i++)
+      {
+         double omega = truthTable[caseIndex][i + numActivations[0]] - outputActivations[i];
+         error += 0.5 * omega * omega;
+      }
+      return error;
+   } // public double caseError(int caseIndex, double[] outputActivations)
 
    /*
-    * Computes the sigmoid function
+    * Computes the error of one case from the single precision outputs of the network for it
     *
-    * @param x the exponent variable in the sigmoid function
+    * @param caseIndex           the case the outputs were calculated for
+    * @param outputActivations   the activations of the output layer
+    * @return                    half the sum of the squared differences between the targets and the outputs
     */
-   public double sigmoid(double x) 
+   public double caseError(int caseIndex, float[] outputActivations)
    {
-      double denominator = 1.0 + Math.exp(-x);
-      return 1.0 / denominator;
-   }
+      double error = 0.0;
+      for (int i = 0; i < numActivations[numLayers]; i++)
+      {
+         double omega = truthTable[caseIndex][i + numActivations[0]] - outputActivations[i];
+         error += 0.5 * omega * omega;
+      }
+      return error;
+   } // public double caseError(int caseIndex, float[] outputActivations)
 
    /*
-    * Computes the derivative of the sigmoid function
+    * Runs every case through the network with the current weights, without modifying them
     *
-    * @param x the variable in the sigmoid function
+    * @return   the sum of the errors of all the cases
     */
-   public double sigmoidDerivative(double x) 
+   public double evaluateError()
    {
-      double sig = sigmoid(x);
-      return (sig) * (1.0 - sig);
-   }
+      double error = 0.0;
+      if (caseStream != null)
+      {
+         caseStream.start(false);
+         for (int row = caseStream.next(); row >= 0; row = caseStream.next())
+         {
+            run(row);
+            error += useFloat ? caseError(row, floatActivations[numLayers]) : caseError(row, activations[numLayers]);
+         }
+         return error;
+      } // if (caseStream != null)
+
+      for (int ii = 0; ii < numCases; ii++) 
+      {
+         run(ii);
+         error += useFloat ? caseError(ii, floatActivations[numLayers]) : caseError(ii, activations[numLayers]);
+      }
+      return error;
+   } // public double evaluateError()
 
    /*
-    * Trains the network by calculating error values between the target and calculated 
-    * output values and implementing steepest descent to modify the weights and decrease the 
-    * error value. The training algorithm stops running if the maximum number of iterations is 
-    * reached or if the error falls within the error threshold.
+    * Runs every training case through the network once, modifying the weights with steepest descent
+    * after each case
+    *
+    * @return   the sum of the errors of all the training cases
     */
-   public void train() throws IOException 
+   public double trainCaseEpoch()
+   {
+      double error = 0.0;
+
+      if (caseStream != null)
+      {
+         caseStream.start(true);
+         for (int row = caseStream.next(); row >= 0; row = caseStream.next())
+         {
+            if (useFloat)
+            {
+               error += trainCaseFloat(row);
+            }
+            else
+            {
+               error += trainCase(row, activations, theta, psi);
+            }
+         } // for (int row = caseStream.next(); row >= 0; row = caseStream.next())
+         return error;
+      } // if (caseStream != null)
+
+      for (int ii = 0; ii < numCases; ii++) 
+      {
+         if (useFloat)
+         {
+            error += trainCaseFloat(ii);
+         }
+         else
+         {
+            error += trainCase(ii, activations, theta, psi);
+         }
+      }
+      return error;
+   } // public double trainCaseEpoch()
+
+   /*
+    * Runs one training case through the network and modifies the weights with steepest descent, using the given 
+    * working arrays so that several threads can train on cases at the same time
+    *
+    * @param caseIndex         the case that the network is being trained for
+    * @param caseActivations   the activation arrays to use, one per layer
+    * @param caseTheta         the theta arrays to use, one per layer
+    * @param casePsi           the psi arrays to use, one per layer
+    * @return                  the error of the case, measured after the weights are modified in afterCase
+    *                          error mode and before they are modified otherwise
+    */
+   public double trainCase(int caseIndex, double[][] caseActivations, double[][] caseTheta, double[][] casePsi)
    {
-      Instant start = Instant.now();
-      System.out.println("----------\nTRAINING: \n");
-      currentError = Integer.MAX_VALUE;
-      
-      boolean maxItersReached = false;
       double bigOmega = 0.0;
 
-      while (!(currentError <= errorThreshold) && (!maxItersReached)) 
+      runForTrain(caseIndex, caseActivations, caseTheta, casePsi);
+      double error = caseError(caseIndex, caseActivations[numLayers]);
+
+      for (int n = numLayers - 1; n > 1; n--)
       {
-         currentError = 0.0;
+         for (int j = 0; j < numActivations[n]; j++)
+         {
+            int row = weightIndex(n, j, 0);
+            bigOmega = kernels.dot(casePsi[n + 1], 0, weights, row, numActivations[n + 1]);
+            kernels.axpy(learningFactor * caseActivations[n][j], casePsi[n + 1], 0, weights, row, numActivations[n + 1]);
+
+            casePsi[n][j] = activationDerivativeFromOutput(n, caseActivations[n][j]) * bigOmega;
+         } // for (int j = 0; j < noActivations[n]; j++)
+      } // for (int n = numLayers - 1; n > 1; n--)
+      
+      int n = 1;
+      //loop for first layer
+      for (int k = 0; k < numActivations[n]; k++)
+      {
+         int row = weightIndex(n, k, 0);
+         bigOmega = kernels.dot(casePsi[n + 1], 0, weights, row, numActivations[n + 1]);
+         kernels.axpy(learningFactor * caseActivations[n][k], casePsi[n + 1], 0, weights, row, numActivations[n + 1]);
          
+         casePsi[n][k] = activationDerivativeFromOutput(n, caseActivations[n][k]) * bigOmega;
+      } // for (int k = 0; k < numActivations[n]; k++)
+
       /*
-       * Calculates the error received for each training case and stores the values in the errors array
+       * The input layer's weights are modified row by row once every psi of the first hidden layer is known,
+       * so each update is one contiguous rank-1 step instead of a walk down a column
        */
-         for (int ii = 0; ii < numCases; ii++) 
+      for (int m = 0; m < numActivations[n - 1]; m++)
+      {
+         kernels.axpy(learningFactor * caseActivations[n - 1][m], casePsi[n], 0, weights, weightIndex(n - 1, m, 0), numActivations[n]);
+      }
+
+      if (errorMode.equals("afterCase"))
+      {
+         run(caseIndex, caseActivations);
+         error = caseError(caseIndex, caseActivations[numLayers]);
+      }
+      return error;
+   } // public double trainCase(int caseIndex, double[][] caseActivations, double[][] caseTheta, double[][] casePsi)
+
+   /*
+    * Runs one training case through the network and modifies the weights with steepest descent in single
+    * precision. In mixed precision the dot products of the backward pass are summed in double precision too.
+    *
+    * @param caseIndex   the case that the network is being trained for
+    * @return            the error of the case, measured after the weights are modified in afterCase error mode
+    *                    and before they are modified otherwise
+    */
+   public double trainCaseFloat(int caseIndex)
+   {
+      double bigOmega = 0.0;
+      int outputLayer = numLayers;
+
+      FlightEvents.ForwardPass event = new FlightEvents.ForwardPass();
+      event.begin();
+      forwardFloat(caseIndex, floatTheta, theta);
+      event.commitSampled(caseIndex, 1, true);
+      double error = caseError(caseIndex, floatActivations[outputLayer]);
+
+      for (int j = 0; j < numActivations[outputLayer]; j++)
+      {
+         floatPsi[outputLayer][j] = (float) (truthTable[caseIndex][j + numActivations[0]] - floatActivations[outputLayer][j]);
+      }
+      activationFunctions[outputLayer].outputPsi(floatActivations[outputLayer], floatPsi[outputLayer], 0, numActivations[outputLayer]);
+
+      for (int n = numLayers - 1; n > 0; n--)
+      {
+         int width = numActivations[n + 1];
+         for (int k = 0; k < numActivations[n]; k++)
          {
-            runForTrain(ii);
+            int row = weightIndex(n, k, 0);
+            if (mixedPrecision)
+            {
+               bigOmega = kernels.mixedDot(floatPsi[n + 1], 0, floatWeights, row, width);
+            }
+            else
+            {
+               bigOmega = kernels.dot(floatPsi[n + 1], 0, floatWeights, row, width);
+            }
+            kernels.axpy((float) (learningFactor * floatActivations[n][k]), floatPsi[n + 1], 0, floatWeights, row, width);
+
+            floatPsi[n][k] = (float) (activationDerivativeFromOutput(n, floatActivations[n][k]) * bigOmega);
+         } // for (int k = 0; k < numActivations[n]; k++)
+      } // for (int n = numLayers - 1; n > 0; n--)
+
+      for (int m = 0; m < numActivations[0]; m++)
+      {
+         kernels.axpy((float) (learningFactor * floatActivations[0][m]), floatPsi[1], 0, floatWeights, weightIndex(0, m, 0), numActivations[1]);
+      }
+
+      if (errorMode.equals("afterCase"))
+      {
+         runFloat(caseIndex);
+         error = caseError(caseIndex, floatActivations[outputLayer]);
+      }
+      return error;
+   } // public double trainCaseFloat(int caseIndex)
+
+   /*
+    * Runs every training case through the network once with the Hogwild method. The cases are split into one
+    * shard of consecutive cases per thread, and every thread trains on its cases one at a time with its own
+    * working arrays, modifying the shared weights directly without any locking. A thread may read weights
+    * another thread is part way through changing, which steepest descent tolerates, so no thread ever waits
+    * for another until the epoch ends.
+    *
+    * @return   the sum of the errors of all the training cases
+    */
+   public double trainHogwildEpoch()
+   {
+      double error = 0.0;
+      double[] shardErrors = new double[numThreads];
+      ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[numThreads];
+      int shardSize = (numCases + numThreads - 1) / numThreads;
+
+      for (int t = 0; t < numThreads; t++)
+      {
+         int shard = t;
+         int shardFirst = Math.min(t * shardSize, numCases);
+         int shardLast = Math.min(shardFirst + shardSize, numCases);
+         tasks[t] = trainPool.submit(() -> 
+         {
+            BatchScratch scratch = workerScratch[shard];
+            shardErrors[shard] = 0.0;
+            for (int ii = shardFirst; ii < shardLast; ii++)
+            {
+               shardErrors[shard] += trainCase(ii, scratch.activations, scratch.theta, scratch.psi);
+            }
+         });
+      } // for (int t = 0; t < numThreads; t++)
+
+      for (int t = 0; t < numThreads; t++)
+      {
+         tasks[t].join();
+         error += shardErrors[t];
+      }
+      return error;
+   } // public double trainHogwildEpoch()
 
-            for (int n = numLayers - 1; n > 1; n--)
+   /*
+    * Runs every training case through the network once in mini-batches of batchSize cases. The weights are
+    * modified once per batch by the sum of the changes calculated for each case in the batch. The error of
+    * each case is taken from the forward pass made before its batch modifies the weights.
+    *
+    * @return   the sum of the errors of all the training cases
+    */
+   public double trainBatchEpoch()
+   {
+      double error = 0.0;
+
+      for (int first = 0; first < numCases; first += batchScratch.capacity)
+      {
+         int count = Math.min(batchScratch.capacity, numCases - first);
+         error += computeBatchGradients(first, count, batchScratch);
+         applyGradients(batchScratch.gradients);
+      }
+      return error;
+   } // public double trainBatchEpoch()
+
+   /*
+    * Runs every training case through the network once in mini-batches, splitting each batch into one shard of
+    * consecutive cases per thread. Each thread computes the weight changes of its shard in its own working arrays,
+    * then the shards' changes are added to the weights in shard order, one slice of the weights per thread. The
+    * shards and the order of the sums depend only on the batch size and the number of threads, so a run is 
+    * reproducible for given starting weights and thread count no matter how the threads are scheduled.
+    *
+    * @return   the sum of the errors of all the training cases
+    */
+   public double trainParallelEpoch()
+   {
+      double error = 0.0;
+      double[] shardErrors = new double[numThreads];
+      int[] shardCounts = new int[numThreads];
+      ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[numThreads];
+
+      for (int first = 0; first < numCases; first += batchScratch.capacity)
+      {
+         int count = Math.min(batchScratch.capacity, numCases - first);
+         int shardSize = (count + numThreads - 1) / numThreads;
+
+         for (int t = 0; t < numThreads; t++)
+         {
+            int shard = t;
+            int shardFirst = first + Math.min(t * shardSize, count);
+            shardCounts[t] = Math.min(shardSize, first + count - shardFirst);
+            tasks[t] = trainPool.submit(() -> 
             {
-               for (int j = 0; j < numActivations[n]; j++)
+               if (shardCounts[shard] > 0)
                {
-                  bigOmega = 0.0;
-      
-                  for (int i = 0; i < numActivations[n + 1]; i++)
+                  shardErrors[shard] = computeBatchGradients(shardFirst, shardCounts[shard], workerScratch[shard]);
+               }
+            });
+         } // for (int t = 0; t < numThreads; t++)
+
+         for (int t = 0; t < numThreads; t++)
+         {
+            tasks[t].join();
+            if (shardCounts[t] > 0)
+            {
+               error += shardErrors[t];
+            }
+         }
+
+         int sliceSize = (weights.length + numThreads - 1) / numThreads;
+         for (int t = 0; t < numThreads; t++)
+         {
+            int sliceStart = Math.min(t * sliceSize, weights.length);
+            int sliceLength = Math.min(sliceSize, weights.length - sliceStart);
+            tasks[t] = trainPool.submit(() -> 
+            {
+               for (int shard = 0; shard < numThreads; shard++)
+               {
+                  if (shardCounts[shard] > 0)
                   {
-                     bigOmega += psi[n + 1][i] * weights[n][j][i];
-                     deltaWeights = learningFactor * activations[n][j] * psi[n + 1][i];
-                     weights[n][j][i] += deltaWeights;
+                     kernels.axpy(learningFactor, workerScratch[shard].gradients, sliceStart, weights, sliceStart, sliceLength);
                   }
-      
-                  psi[n][j] = activationDerivative(theta[n][j]) * bigOmega;
-               } // for (int j = 0; j < noActivations[n]; j++)
-            } // for (int n = numLayers - 1; n > 1; n--)
-            
-            int n = 1;
-            //loop for first layer
+               }
+            });
+         } // for (int t = 0; t < numThreads; t++)
+
+         for (int t = 0; t < numThreads; t++)
+         {
+            tasks[t].join();
+         }
+      } // for (int first = 0; first < numCases; first += batchScratch.capacity)
+      return error;
+   } // public double trainParallelEpoch()
+
+   /*
+    * Runs a batch of consecutive training cases forward through the network together and propagates their errors
+    * backwards, adding up the change each case asks of every weight. Each layer is computed as one matrix-matrix
+    * product over the whole batch rather than one matrix-vector product per case.
+    *
+    * @param firstCase   the index of the first case in the batch
+    * @param count       the number of cases in the batch
+    * @param scratch     the working arrays to use, which receive the summed weight changes in gradients
+    * @return            the sum of the errors of the cases in the batch
+    */
+   public double computeBatchGradients(int firstCase, int count, BatchScratch scratch)
+   {
+      double error = 0.0;
+      int numInputs = numActivations[0];
+      int numOutputs = numActivations[numLayers];
+
+      FlightEvents.ForwardPass event = new FlightEvents.ForwardPass();
+      event.begin();
+      for (int b = 0; b < count; b++)
+      {
+         System.arraycopy(truthTable[firstCase + b], 0, scratch.activations[0], b * numInputs, numInputs);
+      }
+
+      for (int n = 0; n < numLayers; n++)
+      {
+         double[] layerTheta = scratch.theta[n + 1];
+         double[] layerActivations = scratch.activations[n + 1];
+         multiplyLayer(scratch.activations[n], count, n, layerTheta);
+         applyActivation(n + 1, layerTheta, layerActivations, count);
+      } // for (int n = 0; n < numLayers; n++)
+      event.commitSampled(firstCase, count, true);
+
+      for (int b = 0; b < count; b++)
+      {
+         for (int i = 0; i < numOutputs; i++)
+         {
+            int index = b * numOutputs + i;
+            double omega = truthTable[firstCase + b][numInputs + i] - scratch.activations[numLayers][index];
+            error += 0.5 * omega * omega;
+            scratch.psi[numLayers][index] = omega;
+         }
+         activationFunctions[numLayers].outputPsi(scratch.activations[numLayers], scratch.psi[numLayers], b * numOutputs, numOutputs);
+      } // for (int b = 0; b < count; b++)
+
+      for (int n = numLayers - 1; n > 0; n--)
+      {
+         int width = numActivations[n + 1];
+         for (int b = 0; b < count; b++)
+         {
             for (int k = 0; k < numActivations[n]; k++)
             {
-               bigOmega = 0.0;
+               double bigOmega = kernels.dot(scratch.psi[n + 1], b * width, weights, weightIndex(n, k, 0), width);
+               int index = b * numActivations[n] + k;
+               scratch.psi[n][index] = activationDerivativeFromOutput(n, scratch.activations[n][index]) * bigOmega;
+            } // for (int k = 0; k < numActivations[n]; k++)
+         } // for (int b = 0; b < count; b++)
+      } // for (int n = numLayers - 1; n > 0; n--)
 
-               for (int j = 0; j < numActivations[n + 1]; j++)
-               {
-                  bigOmega += psi[n + 1][j] * weights[n][k][j];
-                  deltaWeights = learningFactor * activations[n][k] * psi[n + 1][j];
-                  weights[n][k][j] += deltaWeights;
-               } // for (int j = 0; j < noActivations[n + 1]; j++)
-               
-               psi[n][k] = activationDerivative(theta[n][k]) * bigOmega;
-
-               for (int m = 0; m < numActivations[n - 1]; m++)
+      double[] gradients = scratch.gradients;
+      for (int n = 0; n < numLayers; n++)
+      {
+         int width = numActivations[n + 1];
+         double[] layerPsi = scratch.psi[n + 1];
+         for (int k = 0; k < numActivations[n]; k++)
+         {
+            int row = weightIndex(n, k, 0);
+            for (int j = 0; j < width; j++)
+            {
+               gradients[row + j] = 0.0;
+            }
+            for (int b = 0; b < count; b++)
+            {
+               double activation = scratch.activations[n][b * numActivations[n] + k];
+               kernels.axpy(activation, layerPsi, b * width, gradients, row, width);
+            }
+         } // for (int k = 0; k < numActivations[n]; k++)
+      } // for (int n = 0; n < numLayers; n++)
+      return error;
+   } // public double computeBatchGradients(int firstCase, int count, BatchScratch scratch)
+
+   /*
+    * Multiplies the activations of layer n for a batch of cases by the weights of connectivity layer n.
+    * The weights are walked in tiles of K_BLOCK rows by J_BLOCK columns, and each tile is used for every case
+    * in the batch before moving on, so a tile of a large layer stays in cache while it is reused. Inside a tile
+    * the weight rows and the outputs are both read with unit stride. A single case is a batch of one.
+    *
+    * @param layerIn    the activations of layer n for each case, stored row by row
+    * @param count      the number of cases in the batch
+    * @param n          the connectivity layer to multiply by
+    * @param layerOut   receives the dot products for layer n + 1 for each case, stored row by row
+    */
+   public void multiplyLayer(double[] layerIn, int count, int n, double[] layerOut)
+   {
+      int inWidth = numActivations[n];
+      int width = numActivations[n + 1];
+      Arrays.fill(layerOut, 0, count * width, 0.0);
+
+      for (int kStart = 0; kStart < inWidth; kStart += K_BLOCK)
+      {
+         int kEnd = Math.min(kStart + K_BLOCK, inWidth);
+         for (int jStart = 0; jStart < width; jStart += J_BLOCK)
+         {
+            int jEnd = Math.min(jStart + J_BLOCK, width);
+            for (int b = 0; b < count; b++)
+            {
+               int in = b * inWidth;
+               int out = b * width;
+               for (int k = kStart; k < kEnd; k++)
                {
-                  deltaWeights = learningFactor * activations[n - 1][m] * psi[n][k];
-                  weights[n - 1][m][k] += deltaWeights;
+                  kernels.axpy(layerIn[in + k], weights, weightIndex(n, k, jStart), layerOut, out + jStart, jEnd - jStart);
                }
-            } // for (int k = 0; k < numActivations[n]; k++)
+            } // for (int b = 0; b < count; b++)
+         } // for (int jStart = 0; jStart < width; jStart += J_BLOCK)
+      } // for (int kStart = 0; kStart < inWidth; kStart += K_BLOCK)
+   } // public void multiplyLayer(double[] layerIn, int count, int n, double[] layerOut)
 
-            run(ii);
+   /*
+    * Multiplies the single precision activations of layer n for one case by the weights of connectivity layer n,
+    * summing in single precision. One case reads each weight once, so the weight rows are simply walked in order.
+    *
+    * @param layerIn    the activations of layer n
+    * @param n          the connectivity layer to multiply by
+    * @param layerOut   receives the dot products for layer n + 1
+    */
+   public void multiplyLayer(float[] layerIn, int n, float[] layerOut)
+   {
+      int width = numActivations[n + 1];
+      Arrays.fill(layerOut, 0, width, 0.0f);
+      for (int k = 0; k < numActivations[n]; k++)
+      {
+         kernels.axpy(layerIn[k], floatWeights, weightIndex(n, k, 0), layerOut, 0, width);
+      }
+   } // public void multiplyLayer(float[] layerIn, int n, float[] layerOut)
 
-            for (int i = 0; i < numActivations[numLayers]; i++)
-            {
-               currentError += 0.5 * ((truthTable[ii][i + numActivations[0]] - activations[numLayers][i]) * (truthTable[ii][i + numActivations[0]] - activations[numLayers][i]));
-            }
-         } // for (int ii = 0; ii < numCases; ii++)
+   /*
+    * Multiplies the single precision activations of layer n for one case by the weights of connectivity layer n,
+    * summing in double precision
+    *
+    * @param layerIn    the activations of layer n
+    * @param n          the connectivity layer to multiply by
+    * @param layerOut   receives the dot products for layer n + 1
+    */
+   public void multiplyLayer(float[] layerIn, int n, double[] layerOut)
+   {
+      int width = numActivations[n + 1];
+      Arrays.fill(layerOut, 0, width, 0.0);
+      for (int k = 0; k < numActivations[n]; k++)
+      {
+         kernels.mixedAxpy(layerIn[k], floatWeights, weightIndex(n, k, 0), layerOut, 0, width);
+      }
+   } // public void multiplyLayer(float[] layerIn, int n, double[] layerOut)
+
+   /*
+    * Multiplies the activations of layer n for one case by the weights of connectivity layer n read in place from
+    * the mapped weight file, summing in double precision whatever type the weights are stored as. Double 
+    * precision weights give the same dot products as multiplyLayer.
+    *
+    * @param layerIn    the activations of layer n
+    * @param n          the connectivity layer to multiply by
+    * @param layerOut   receives the dot products for layer n + 1
+    */
+   public void multiplyMappedLayer(double[] layerIn, int n, double[] layerOut)
+   {
+      int width = numActivations[n + 1];
+      Arrays.fill(layerOut, 0, width, 0.0);
+      for (int k = 0; k < numActivations[n]; k++)
+      {
+         if (mappedWeights.dtype == WeightFile.DTYPE_FLOAT64)
+         {
+            kernels.axpy(layerIn[k], mappedPayload, weightIndex(n, k, 0), layerOut, 0, width);
+         }
+         else
+         {
+            kernels.mixedAxpy(layerIn[k], mappedPayload, weightIndex(n, k, 0), layerOut, 0, width);
+         }
+      } // for (int k = 0; k < numActivations[n]; k++)
+   } // public void multiplyMappedLayer(double[] layerIn, int n, double[] layerOut)
+
+   /*
+    * Modifies every weight by the learning factor times its accumulated change
+    *
+    * @param gradients   the accumulated change of each weight, in the same layout as the weights
+    */
+   public void applyGradients(double[] gradients)
+   {
+      kernels.axpy(learningFactor, gradients, 0, weights, 0, weights.length);
+   } // public void applyGradients(double[] gradients)
 
+   /*
+    * Sets up a network from a control file for scoring new inputs with infer. The weights are loaded or mapped
+    * as the control file says, but no cases are read, so the case file does not need to exist.
+    *
+    * @param filePath   the control file
+    * @return           the network, ready to infer
+    * @throws IOException if the weights cannot be read
+    */
+   public static N_Layer openForInference(String filePath) throws IOException
+   {
+      N_Layer network = new N_Layer();
+      network.setConfigParams(filePath);
+      network.allocateArray();
+      network.populateWeights();
+      return network;
+   } // public static N_Layer openForInference(String filePath) throws IOException
+
+   /*
+    * Allocates working arrays for infer, for a caller that keeps its own, typically one per scoring thread
+    *
+    * @param capacity   the largest number of inputs to run together
+    * @return           the working arrays
+    */
+   public InferenceScratch newInferenceScratch(int capacity)
+   {
+      return new InferenceScratch(numActivations, numLayers, capacity, useFloat);
+   }
+
+   /*
+    * Scores a batch of inputs with working arrays borrowed from the network's pool. Any number of threads may
+    * call this at once, as long as nothing trains or reloads the weights meanwhile.
+    *
+    * @param inputs   one row of numActivations[0] input values per input
+    * @return         one row of numActivations[numLayers] outputs per input
+    * @throws IllegalArgumentException if an input row has the wrong width
+    */
+   public double[][] infer(double[][] inputs)
+   {
+      InferenceScratch scratch = inferencePool.poll();
+      if (scratch == null)
+      {
+         scratch = newInferenceScratch(INFERENCE_BATCH);
+      }
+
+      try
+      {
+         double[][] results = new double[inputs.length][numActivations[numLayers]];
+         infer(inputs, results, scratch);
+         return results;
+      }
+      finally
+      {
+         inferencePool.offer(scratch);
+      }
+   } // public double[][] infer(double[][] inputs)
+
+   /*
+    * Scores a batch of inputs with the caller's working arrays, without allocating. The inputs are run
+    * scratch.capacity at a time through multiplyLayer, so each tile of a large layer's weights is used for
+    * every input of the batch while it is in cache. Only the weights and the given arrays are touched, so
+    * threads with their own working arrays may call this at once, and the outputs equal those of run.
+    *
+    * @param inputs    one row of numActivations[0] input values per input
+    * @param results   receives one row of numActivations[numLayers] outputs per input
+    * @param scratch   the working arrays, used by one thread at a time
+    * @throws IllegalArgumentException if a row of inputs or results has the wrong width or there are too few
+    *                                  result rows
+    */
+   public void infer(double[][] inputs, double[][] results, InferenceScratch scratch)
+   {
+      int inWidth = numActivations[0];
+      int outWidth = numActivations[numLayers];
+      if (results.length < inputs.length)
+      {
+         throw new IllegalArgumentException(inputs.length + " inputs but only " + results.length + " result rows");
+      }
+      for (int r = 0; r < inputs.length; r++)
+      {
+         if (inputs[r].length != inWidth || results[r].length < outWidth)
+         {
+            throw new IllegalArgumentException("Row " + r + " has " + inputs[r].length + " inputs and room for " + 
+                                               results[r].length + " outputs; the network takes " + inWidth + 
+                                               " and gives " + outWidth);
+         }
+      } // for (int r = 0; r < inputs.length; r++)
+
+      if (useFloat || mappedPayload != null)
+      {
+         for (int r = 0; r < inputs.length; r++)
+         {
+            FlightEvents.ForwardPass event = new FlightEvents.ForwardPass();
+            event.begin();
+            inferRow(inputs[r], results[r], scratch);
+            event.commitSampled(r, 1, false);
+         }
+         return;
+      }
+
+      double[][] batchActivations = scratch.activations;
+      for (int first = 0; first < inputs.length; first += scratch.capacity)
+      {
+         FlightEvents.ForwardPass event = new FlightEvents.ForwardPass();
+         event.begin();
+         int count = Math.min(scratch.capacity, inputs.length - first);
+         for (int b = 0; b < count; b++)
+         {
+            System.arraycopy(inputs[first + b], 0, batchActivations[0], b * inWidth, inWidth);
+         }
+
+         for (int n = 0; n < numLayers; n++)
+         {
+            multiplyLayer(batchActivations[n], count, n, batchActivations[n + 1]);
+            applyActivation(n + 1, batchActivations[n + 1], batchActivations[n + 1], count);
+         }
+         event.commitSampled(first, count, false);
+
+         for (int b = 0; b < count; b++)
+         {
+            System.arraycopy(batchActivations[numLayers], b * outWidth, results[first + b], 0, outWidth);
+         }
+      } // for (int first = 0; first < inputs.length; first += scratch.capacity)
+   } // public void infer(double[][] inputs, double[][] results, InferenceScratch scratch)
+
+   /*
+    * Scores one input of a network whose weights are stored in single precision or mapped from a weight file,
+    * which run one input at a time
+    *
+    * @param input     the numActivations[0] input values
+    * @param result    receives the numActivations[numLayers] outputs
+    * @param scratch   the working arrays, used by one thread at a time
+    */
+   public void inferRow(double[] input, double[] result, InferenceScratch scratch)
+   {
+      double[][] rowActivations = scratch.activations;
+      if (mappedPayload != null)
+      {
+         System.arraycopy(input, 0, rowActivations[0], 0, numActivations[0]);
+         for (int n = 0; n < numLayers; n++)
+         {
+            multiplyMappedLayer(rowActivations[n], n, rowActivations[n + 1]);
+            applyActivation(n + 1, rowActivations[n + 1], rowActivations[n + 1], 1);
+         }
+         System.arraycopy(rowActivations[numLayers], 0, result, 0, numActivations[numLayers]);
+         return;
+      } // if (mappedPayload != null)
+
+      float[][] rowFloats = scratch.floatActivations;
+      for (int i = 0; i < numActivations[0]; i++)
+      {
+         rowFloats[0][i] = (float) input[i];
+      }
+      for (int n = 0; n < numLayers; n++)
+      {
+         if (mixedPrecision)
+         {
+            multiplyLayer(rowFloats[n], n, rowActivations[n + 1]);
+            applyActivation(n + 1, rowActivations[n + 1], rowFloats[n + 1]);
+         }
+         else
+         {
+            multiplyLayer(rowFloats[n], n, rowFloats[n + 1]);
+            applyActivation(n + 1, rowFloats[n + 1], rowFloats[n + 1]);
+         }
+      } // for (int n = 0; n < numLayers; n++)
+      for (int j = 0; j < numActivations[numLayers]; j++)
+      {
+         result[j] = rowFloats[numLayers][j];
+      }
+   } // public void inferRow(double[] input, double[] result, InferenceScratch scratch)
+
+   /*
+    * Runs one training iteration over every case with the configured batch size, thread count and parallel 
+    * mode, measuring the error as errorMode selects
+    *
+    * @return   the total error of the iteration, before it is averaged over the cases
+    */
+   public double trainEpoch()
+   {
+      double totalError;
+      if (numThreads > 1 && parallelMode.equals("hogwild"))
+      {
+         totalError = trainHogwildEpoch();
+      }
+      else if (batchSize > 1 && numThreads > 1)
+      {
+         totalError = trainParallelEpoch();
+      }
+      else if (batchSize > 1)
+      {
+         totalError = trainBatchEpoch();
+      }
+      else
+      {
+         totalError = trainCaseEpoch();
+      }
+
+      if (errorMode.equals("afterEpoch"))
+      {
+         totalError = evaluateError();
+      }
+      return totalError;
+   } // public double trainEpoch()
+
+   /*
+    * Trains the network by calculating error values between the target and calculated 
+    * output values and implementing steepest descent to modify the weights and decrease the 
+    * error value. The training algorithm stops running if the maximum number of iterations is 
+    * reached or if the error falls within the error threshold.
+    */
+   public void train() throws IOException 
+   {
+      Instant start = Instant.now();
+      System.out.println("----------\nTRAINING: \n");
+      currentError = Integer.MAX_VALUE;
+      
+      boolean maxItersReached = false;
+
+      if (!metricsFormat.equals("off"))
+      {
+         metrics.addListener(new MetricsFileSink(new File(metricsFile), metricsFormat));
+      }
+      metrics.start(trainItersCounter);
+
+      while (!(currentError <= errorThreshold) && (!maxItersReached)) 
+      {
+         if (metrics.isActive())
+         {
+            metrics.beforeEpoch(trainItersCounter, weights, floatWeights);
+         }
+      /*
+       * Calculates the error received for each training case
+       */
+         FlightEvents.TrainingEpoch epochEvent = new FlightEvents.TrainingEpoch();
+         epochEvent.begin();
+         currentError = trainEpoch();
+         epochEvent.end();
          trainItersCounter++;
 
-         if (trainItersCounter == maxTrainIters) 
+         if (trainItersCounter >= maxTrainIters) 
          {
             maxItersReached = true;
          }
 
          currentError = currentError / (double) numCases;
+         if (trainItersCounter > errorHistory.length)
+         {
+            errorHistory = Arrays.copyOf(errorHistory, 2 * trainItersCounter);
+         }
+         errorHistory[trainItersCounter - 1] = currentError;
+         if (epochEvent.shouldCommit())
+         {
+            epochEvent.iteration = trainItersCounter;
+            epochEvent.error = currentError;
+            epochEvent.cases = numCases;
+            epochEvent.commit();
+         }
+         if (metrics.isActive())
+         {
+            metrics.afterEpoch(trainItersCounter, currentError, numCases, weights, floatWeights, 
+                               maxItersReached || currentError <= errorThreshold);
+         }
          Instant end = Instant.now();
          timeElapsed = Duration.between(start, end).toMillis();
          
@@ -623,10 +2078,30 @@ public class N_Layer
          if (saveWeightsDecide.equals("save") && saveInterval > 0 && trainItersCounter % saveInterval == 0)
          {
             System.out.println("Current error:" + currentError);
-            //saveWeights(saveWeightFile);
+            checkpointer.checkpoint(weights, floatWeights, this::trainingState);
          }
       } // while (!(currentError <= errorThreshold) && (!maxItersReached))
 
+ 
+      if (trainPool != null)
+      {
+         trainPool.shutdown();
+      }
+
+      metrics.close();
+      if (caseStream != null)
+      {
+         caseStream.close();
+      }
+      if (checkpointer != null)
+      {
+         checkpointer.close();
+         if (checkpointer.replaced > 0)
+         {
+            System.out.println(checkpointer.replaced + " checkpoints were replaced by newer ones before they could be written.\n");
+         }
+      }
+
       if (saveWeightsDecide.equals("save"))
       {
          saveWeights(saveWeightFile);
@@ -667,7 +2142,7 @@ public class N_Layer
          perceptron.allocateTrainArrays();
          perceptron.echoTrainConfigParams();
          perceptron.train();
-         for   (int ii = 0; ii < numCases; ii++)
+         for   (int ii = 0; ii < numCases && perceptron.caseStream == null; ii++)
          {
             perceptron.run(ii);
          }
@@ -677,7 +2152,7 @@ public class N_Layer
       else
       {
          perceptron.echoRunConfigParams();
-         for (int ii = 0; ii < numCases; ii++) 
+         for (int ii = 0; ii < numCases && perceptron.caseStream == null; ii++) 
          {
             perceptron.run(ii);
          }
@@ -0,0 +1,401 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Measures the throughput and allocation of the network's hot paths, so that every performance change can be
+ * judged against a baseline instead of the training time printed by reportResults. Each benchmark is run for a
+ * warmup period, then for a number of timed measurement iterations, and reports
+ *    ops/s      the mean number of operations per second over the measurement iterations
+ *    +-         the standard deviation of ops/s between the iterations
+ *    B/op       the bytes allocated per operation, by every live thread
+ *    MB/s       the allocation rate
+ *    GCs        the number of collections during measurement
+ *    GC ms      the time spent collecting during measurement
+ *
+ * The benchmarks are
+ *    run           N_Layer.run of one case, cycling through the cases
+ *    infer         N_Layer.infer of every case in one call, with the caller's working arrays
+ *    runForTrain   N_Layer.runForTrain of one case, cycling through the cases
+ *    trainEpoch    one training iteration over every case, as train() runs it
+ *    saveWeights   saving the weights in the weight format
+ *    loadWeights   loading the saved weights
+ *    loadCases     reading the case file into the truth table
+ *
+ * and the topologies
+ *    xor     2-2-1 with the four cases of XOR
+ *    truth   2-5-5-3 with the AND, OR and XOR truth tables
+ *    image   10000-100-10-5 with 25 cases of random pixel values
+ *
+ * Each topology is set up from a control file and a case file written to a temporary directory, with weights
+ * drawn from a fixed seed, so every run measures the same network. saveWeights writes to the working directory,
+ * as N_Layer always has, so the weights are saved there as nlayer-bench-<topology>.weights and deleted at the end.
+ *
+ * Usage: java NetworkBenchmark [-w warmupSeconds] [-i iterations] [-t iterationSeconds] [-k kernelType]
+ *                              [-f weightFormat] [benchmark ...] [topology ...]
+ * With no benchmarks or topologies named, all of them are run.
+ * ----------------------------------
+ * VARIABLES:
+ *
+ * double warmupSeconds          //The time each benchmark runs before it is measured
+ * int iterations                //The number of measurement iterations
+ * double iterationSeconds       //The time each measurement iteration runs
+ * String kernelType             //The kernels the networks use
+ * String weightFormat           //The format weights are saved and loaded in
+ * double sink                   //Collects results so the measured work cannot be optimized away
+ *
+ * METHODS:
+ *
+ * public static N_Layer setUp(String topology, File directory, String kernelType, String weightFormat) throws IOException
+ * public Operation operation(String benchmark, N_Layer network) throws IOException
+ * public void measure(String benchmark, String topology, Operation operation) throws IOException
+ * public static long allocatedBytes()
+ * public static long[] collections()
+ * public static void main(String[] args) throws IOException
+ */
+public class NetworkBenchmark
+{
+   public static final String[] BENCHMARKS = {"run", "infer", "runForTrain", "trainEpoch", "saveWeights", "loadWeights", "loadCases"};
+   public static final String[] TOPOLOGIES = {"xor", "truth", "image"};
+
+   /*
+    * One operation of a benchmark
+    */
+   public interface Operation
+   {
+      /*
+       * Performs the operation once
+       *
+       * @param count   the number of operations performed before this one
+       */
+      public void execute(long count) throws IOException;
+   }
+
+   public double warmupSeconds;
+   public int iterations;
+   public double iterationSeconds;
+   public String kernelType;
+   public String weightFormat;
+   public double sink;
+
+   /*
+    * Writes the control file and case file of a topology and sets up a network from them, ready to run and train
+    *
+    * @param topology       "xor", "truth" or "image"
+    * @param directory      the directory the files are written to
+    * @param kernelType     the kernels the network uses
+    * @param weightFormat   the format the network saves weights in
+    * @return               the network
+    * @throws IllegalArgumentException if the topology is unknown
+    */
+   public static N_Layer setUp(String topology, File directory, String kernelType, String weightFormat) throws IOException
+   {
+      int[] numActivations;
+      double[][] cases;
+      if (topology.equals("xor"))
+      {
+         numActivations = new int[] {2, 2, 1};
+         cases = new double[][] {{0, 0, 0}, {0, 1, 1}, {1, 0, 1}, {1, 1, 0}};
+      }
+      else if (topology.equals("truth"))
+      {
+         numActivations = new int[] {2, 5, 5, 3};
+         cases = new double[][] {{0, 0, 0, 0, 0}, {0, 1, 0, 1, 1}, {1, 0, 0, 1, 1}, {1, 1, 1, 1, 0}};
+      }
+      else if (topology.equals("image"))
+      {
+         numActivations = new int[] {10000, 100, 10, 5};
+         cases = new double[25][10005];
+         Random random = new Random(25);
+         for (int c = 0; c < cases.length; c++)
+         {
+            for (int i = 0; i < 10000; i++)
+            {
+               cases[c][i] = random.nextInt(256) / 255.0;
+            }
+            cases[c][10000 + c % 5] = 1.0;
+         }
+      } // else if (topology.equals("image"))
+      else
+      {
+         throw new IllegalArgumentException("Unknown topology " + topology);
+      }
+
+      int numLayers = numActivations.length - 1;
+      File caseFile = new File(directory, topology + "_cases.txt");
+      try (BufferedWriter out = new BufferedWriter(new FileWriter(caseFile)))
+      {
+         for (int c = 0; c < cases.length; c++)
+         {
+            for (int i = 0; i < cases[c].length; i++)
+            {
+               out.write(cases[c][i] + " ");
+            }
+            out.newLine();
+         }
+      } // try (BufferedWriter out = new BufferedWriter(new FileWriter(caseFile)))
+
+      File controlFile = new File(directory, topology + "_control.txt");
+      try (BufferedWriter out = new BufferedWriter(new FileWriter(controlFile)))
+      {
+         out.write("N-Layer\n" + caseFile.getPath() + "\n" + numLayers + "\ntrain\n");
+         for (int n = 0; n <= numLayers; n++)
+         {
+            out.write(numActivations[n] + " ");
+         }
+         out.write("\nrand\nnone\n-1.5 1.5\n");
+         out.write(cases.length + "\n0.3\n1\n0\nsave\nnlayer-bench-" + topology + ".weights\n0\n");
+         out.write("1\n" + kernelType + "\n1\nsync\ndouble\nafterCase\n");
+         for (int n = 1; n <= numLayers; n++)
+         {
+            out.write("sigmoid ");
+         }
+         out.write("\noff\n" + weightFormat + "\nmemory\n3\n42\n");
+         for (int n = 0; n < numLayers; n++)
+         {
+            out.write("uniform ");
+         }
+         out.newLine();
+      } // try (BufferedWriter out = new BufferedWriter(new FileWriter(controlFile)))
+
+      N_Layer network = new N_Layer();
+      network.setConfigParams(controlFile.getPath());
+      network.allocateArray();
+      network.populateArrays();
+      network.allocateTrainArrays();
+      return network;
+   } // public static N_Layer setUp(String topology, File directory, String kernelType, String weightFormat) throws IOException
+
+   /*
+    * Creates the operation a benchmark measures on a network
+    *
+    * @param benchmark   the name of the benchmark
+    * @param network     the network set up for the topology
+    * @return            the operation
+    * @throws IllegalArgumentException if the benchmark is unknown
+    */
+   public Operation operation(String benchmark, N_Layer network) throws IOException
+   {
+      int numCases = network.truthTable.length;
+      if (benchmark.equals("run"))
+      {
+         return count -> sink += network.run((int) (count % numCases))[0];
+      }
+      else if (benchmark.equals("infer"))
+      {
+         double[][] inputs = new double[numCases][];
+         for (int c = 0; c < numCases; c++)
+         {
+            inputs[c] = Arrays.copyOf(network.truthTable[c], network.numActivations[0]);
+         }
+         double[][] results = new double[numCases][network.numActivations[network.numLayers]];
+         InferenceScratch scratch = network.newInferenceScratch(N_Layer.INFERENCE_BATCH);
+         return count ->
+         {
+            network.infer(inputs, results, scratch);
+            sink += results[0][0];
+         };
+      } // else if (benchmark.equals("infer"))
+      else if (benchmark.equals("runForTrain"))
+      {
+         return count -> sink += network.runForTrain((int) (count % numCases))[network.numLayers][0];
+      }
+      else if (benchmark.equals("trainEpoch"))
+      {
+         return count -> sink += network.trainEpoch();
+      }
+      else if (benchmark.equals("saveWeights"))
+      {
+         return count -> network.saveWeights(network.saveWeightFile);
+      }
+      else if (benchmark.equals("loadWeights"))
+      {
+         network.saveWeights(network.saveWeightFile);
+         return count -> network.loadWeights(network.saveWeightFile.getName());
+      }
+      else if (benchmark.equals("loadCases"))
+      {
+         return count -> network.loadCases(network.nodeFile);
+      }
+      throw new IllegalArgumentException("Unknown benchmark " + benchmark);
+   } // public Operation operation(String benchmark, N_Layer network) throws IOException
+
+   /*
+    * Warms up a benchmark, measures it and prints a line of results
+    *
+    * @param benchmark   the name of the benchmark
+    * @param topology    the name of the topology
+    * @param operation   the operation to measure
+    */
+   public void measure(String benchmark, String topology, Operation operation) throws IOException
+   {
+      long warmupEnd = System.nanoTime() + (long) (warmupSeconds * 1e9);
+      long count = 0;
+      do
+      {
+         operation.execute(count++);
+      } while (System.nanoTime() < warmupEnd);
+
+      double[] rates = new double[iterations];
+      long totalOps = 0;
+      long totalNanos = 0;
+      long[] collectionsBefore = collections();
+      long allocatedBefore = allocatedBytes();
+      for (int i = 0; i < iterations; i++)
+      {
+         long ops = 0;
+         long start = System.nanoTime();
+         long elapsed;
+         do
+         {
+            operation.execute(count++);
+            ops++;
+            elapsed = System.nanoTime() - start;
+         } while (elapsed < (long) (iterationSeconds * 1e9));
+         rates[i] = ops / (elapsed / 1e9);
+         totalOps += ops;
+         totalNanos += elapsed;
+      } // for (int i = 0; i < iterations; i++)
+      long allocated = allocatedBytes() - allocatedBefore;
+      long[] collectionsAfter = collections();
+
+      double mean = 0;
+      for (int i = 0; i < iterations; i++)
+      {
+         mean += rates[i] / iterations;
+      }
+      double variance = 0;
+      for (int i = 0; i < iterations; i++)
+      {
+         variance += (rates[i] - mean) * (rates[i] - mean) / Math.max(1, iterations - 1);
+      }
+
+      System.out.printf("%-12s %-6s %14.3f %12.3f %14.1f %10.2f %5d %7d%n", benchmark, topology, mean,
+                        Math.sqrt(variance), (double) allocated / totalOps, allocated / (totalNanos / 1e9) / 1e6,
+                        collectionsAfter[0] - collectionsBefore[0], collectionsAfter[1] - collectionsBefore[1]);
+   } // public void measure(String benchmark, String topology, Operation operation) throws IOException
+
+   /*
+    * Sums the bytes allocated so far by every live thread
+    *
+    * @return   the bytes allocated, or 0 if the JVM does not count allocations per thread
+    */
+   public static long allocatedBytes()
+   {
+      if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+      {
+         return 0;
+      }
+      com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+      long[] allocated = threads.getThreadAllocatedBytes(threads.getAllThreadIds());
+      long total = 0;
+      for (int t = 0; t < allocated.length; t++)
+      {
+         total += Math.max(0, allocated[t]);
+      }
+      return total;
+   } // public static long allocatedBytes()
+
+   /*
+    * Sums the collections of every garbage collector so far
+    *
+    * @return   the number of collections followed by the milliseconds spent in them
+    */
+   public static long[] collections()
+   {
+      long[] totals = new long[2];
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+      {
+         totals[0] += Math.max(0, collector.getCollectionCount());
+         totals[1] += Math.max(0, collector.getCollectionTime());
+      }
+      return totals;
+   } // public static long[] collections()
+
+   /*
+    * Runs the benchmarks named in the arguments on the topologies named in them
+    */
+   public static void main(String[] args) throws IOException
+   {
+      NetworkBenchmark bench = new NetworkBenchmark();
+      bench.warmupSeconds = 2;
+      bench.iterations = 5;
+      bench.iterationSeconds = 2;
+      bench.kernelType = "scalar";
+      bench.weightFormat = "text";
+      List<String> benchmarks = new ArrayList<String>();
+      List<String> topologies = new ArrayList<String>();
+      for (int a = 0; a < args.length; a++)
+      {
+         if (args[a].equals("-w"))
+         {
+            bench.warmupSeconds = Double.parseDouble(args[++a]);
+         }
+         else if (args[a].equals("-i"))
+         {
+            bench.iterations = Integer.parseInt(args[++a]);
+         }
+         else if (args[a].equals("-t"))
+         {
+            bench.iterationSeconds = Double.parseDouble(args[++a]);
+         }
+         else if (args[a].equals("-k"))
+         {
+            bench.kernelType = args[++a];
+         }
+         else if (args[a].equals("-f"))
+         {
+            bench.weightFormat = args[++a];
+         }
+         else if (Arrays.asList(TOPOLOGIES).contains(args[a]))
+         {
+            topologies.add(args[a]);
+         }
+         else if (Arrays.asList(BENCHMARKS).contains(args[a]))
+         {
+            benchmarks.add(args[a]);
+         }
+         else
+         {
+            throw new IllegalArgumentException("Unknown benchmark or topology " + args[a]);
+         }
+      } // for (int a = 0; a < args.length; a++)
+      if (benchmarks.isEmpty())
+      {
+         benchmarks.addAll(Arrays.asList(BENCHMARKS));
+      }
+      if (topologies.isEmpty())
+      {
+         topologies.addAll(Arrays.asList(TOPOLOGIES));
+      }
+
+      File directory = Files.createTempDirectory("nlayer-bench").toFile();
+      System.out.printf("%-12s %-6s %14s %12s %14s %10s %5s %7s%n", "Benchmark", "Topo", "ops/s", "+-", "B/op",
+                        "MB/s", "GCs", "GC ms");
+      for (String topology : topologies)
+      {
+         N_Layer network = setUp(topology, directory, bench.kernelType, bench.weightFormat);
+         for (String benchmark : benchmarks)
+         {
+            bench.measure(benchmark, topology, bench.operation(benchmark, network));
+         }
+         new File(network.saveWeightFile.getName()).delete();
+         new File(network.saveWeightFile.getName() + ".bin").delete();
+      } // for (String topology : topologies)
+
+      for (File file : directory.listFiles())
+      {
+         file.delete();
+      }
+      directory.delete();
+      System.out.println("(" + bench.sink + ")");
+   } // public static void main(String[] args) throws IOException
+} // public class NetworkBenchmark
@@ -0,0 +1,94 @@
+import java.nio.ByteBuffer;
+
+/*
+ * Implements the Kernels operations with plain loops. The values are combined in the same order as the original
+ * loops of N_Layer, so networks produce the same outputs with these kernels as they did before them.
+ */
+public class ScalarKernels implements Kernels
+{
+   public double dot(double[] x, int xOffset, double[] y, int yOffset, int length)
+   {
+      double sum = 0.0;
+      for (int i = 0; i < length; i++)
+      {
+         sum += x[xOffset + i] * y[yOffset + i];
+      }
+      return sum;
+   }
+
+   public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length)
+   {
+      for (int i = 0; i < length; i++)
+      {
+         y[yOffset + i] += a * x[xOffset + i];
+      }
+   }
+
+   public void sigmoid(double[] x, double[] y, int length)
+   {
+      for (int i = 0; i < length; i++)
+      {
+         y[i] = 1.0 / (1.0 + Math.exp(-x[i]));
+      }
+   }
+
+   public float dot(float[] x, int xOffset, float[] y, int yOffset, int length)
+   {
+      float sum = 0.0f;
+      for (int i = 0; i < length; i++)
+      {
+         sum += x[xOffset + i] * y[yOffset + i];
+      }
+      return sum;
+   }
+
+   public double mixedDot(float[] x, int xOffset, float[] y, int yOffset, int length)
+   {
+      double sum = 0.0;
+      for (int i = 0; i < length; i++)
+      {
+         sum += (double) x[xOffset + i] * y[yOffset + i];
+      }
+      return sum;
+   }
+
+   public void axpy(float a, float[] x, int xOffset, float[] y, int yOffset, int length)
+   {
+      for (int i = 0; i < length; i++)
+      {
+         y[yOffset + i] += a * x[xOffset + i];
+      }
+   }
+
+   public void mixedAxpy(double a, float[] x, int xOffset, double[] y, int yOffset, int length)
+   {
+      for (int i = 0; i < length; i++)
+      {
+         y[yOffset + i] += a * x[xOffset + i];
+      }
+   }
+
+   public void sigmoid(float[] x, float[] y, int length)
+   {
+      for (int i = 0; i < length; i++)
+      {
+         y[i] = (float) (1.0 / (1.0 + Math.exp(-x[i])));
+      }
+   }
+
+   public void axpy(double a, ByteBuffer x, int xIndex, double[] y, int yOffset, int length)
+   {
+      for (int i = 0; i < length; i++)
+      {
+         y[yOffset + i] += a * x.getDouble((xIndex + i) * 8);
+      }
+   }
+
+   public void mixedAxpy(double a, ByteBuffer x, int xIndex, double[] y, int yOffset, int length)
+   {
+      for (int i = 0; i < length; i++)
+      {
+         y[yOffset + i] += a * x.getFloat((xIndex + i) * 4);
+      }
+   }
+} // public class ScalarKernels
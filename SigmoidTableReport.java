@@ -0,0 +1,295 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * Reports how closely and how quickly a SigmoidTable stands in for the exact sigmoid.
+ *
+ * For several table resolutions, it measures the largest error of the interpolated sigmoid and derivative over
+ * [-20, 20] and the time per call next to the exact functions. Then it sets up the network described by a
+ * control file and, starting from the same weights each time, runs every case and trains for a number of
+ * epochs with exact sigmoids and again with the configured table (the default table if the file has none),
+ * comparing the outputs, the errors and the median time taken once both paths are warmed up.
+ * ----------------------------------
+ * METHODS:
+ *
+ * public static void reportFunctions()
+ * public static double timeTable(SigmoidTable table, boolean derivative)
+ * public static double timeExact(boolean derivative)
+ * public static void reportNetwork(String filePath, int epochs) throws IOException
+ * public static double[] timeBoth(N_Layer network, SigmoidTable table, double[] startWeights, float[] startFloatWeights, int epochs)
+ * public static void useTable(N_Layer network, SigmoidTable table)
+ * public static double[][] runAll(N_Layer network)
+ * public static void main(String[] args) throws IOException
+ */
+public class SigmoidTableReport
+{
+   public static final double SAMPLE_LIMIT = 20.0;
+   public static final int SAMPLES = 4000001;
+   public static final int TIMING_CALLS = 20000000;
+   public static final int[] STEPS_PER_UNIT = {16, 32, 64, 128, 256};
+   public static final int WARMUP_ROUNDS = 5;
+   public static final int TIMED_ROUNDS = 9;
+
+   /*
+    * Keeps the JIT from discarding the timed loops
+    */
+   public static double sink;
+
+   /*
+    * Prints the largest error and the time per call of the sigmoid and its derivative for each table resolution
+    */
+   public static void reportFunctions()
+   {
+      System.out.printf("Exact sigmoid: %.2f ns/call, derivative: %.2f ns/call%n%n",
+                        timeExact(false), timeExact(true));
+      System.out.println("steps/unit   table KB   max sigmoid error   max derivative error   sigmoid ns   derivative ns");
+
+      for (int steps : STEPS_PER_UNIT)
+      {
+         SigmoidTable table = new SigmoidTable(SigmoidTable.DEFAULT_LIMIT, steps);
+         double maxError = 0.0;
+         double maxDerivativeError = 0.0;
+
+         for (int i = 0; i < SAMPLES; i++)
+         {
+            double x = -SAMPLE_LIMIT + 2.0 * SAMPLE_LIMIT * i / (SAMPLES - 1);
+            double exact = 1.0 / (1.0 + Math.exp(-x));
+            maxError = Math.max(maxError, Math.abs(table.sigmoid(x) - exact));
+            maxDerivativeError = Math.max(maxDerivativeError, Math.abs(table.derivative(x) - exact * (1.0 - exact)));
+         }
+
+         System.out.printf("%10d   %8d   %17.3e   %20.3e   %10.2f   %13.2f%n", steps,
+                           (table.values.length + table.derivatives.length) * 8 / 1024, maxError,
+                           maxDerivativeError, timeTable(table, false), timeTable(table, true));
+      } // for (int steps : STEPS_PER_UNIT)
+      System.out.println();
+   } // public static void reportFunctions()
+
+   /*
+    * Times calls to a table over inputs spread across [-SAMPLE_LIMIT, SAMPLE_LIMIT], after a warm-up run
+    *
+    * @param table        the table to read
+    * @param derivative   whether to time the derivative instead of the sigmoid
+    * @return             the average time of a call in nanoseconds
+    */
+   public static double timeTable(SigmoidTable table, boolean derivative)
+   {
+      long elapsed = 0;
+      for (int rep = 0; rep < 2; rep++)
+      {
+         double sum = 0.0;
+         double step = 2.0 * SAMPLE_LIMIT / TIMING_CALLS;
+         long start = System.nanoTime();
+         for (int i = 0; i < TIMING_CALLS; i++)
+         {
+            double x = -SAMPLE_LIMIT + i * step;
+            sum += derivative ? table.derivative(x) : table.sigmoid(x);
+         }
+         elapsed = System.nanoTime() - start;
+         sink += sum;
+      } // for (int rep = 0; rep < 2; rep++)
+      return (double) elapsed / TIMING_CALLS;
+   } // public static double timeTable(SigmoidTable table, boolean derivative)
+
+   /*
+    * Times the exact sigmoid or its derivative in the same way as timeTable
+    *
+    * @param derivative   whether to time the derivative instead of the sigmoid
+    * @return             the average time of a call in nanoseconds
+    */
+   public static double timeExact(boolean derivative)
+   {
+      long elapsed = 0;
+      for (int rep = 0; rep < 2; rep++)
+      {
+         double sum = 0.0;
+         double step = 2.0 * SAMPLE_LIMIT / TIMING_CALLS;
+         long start = System.nanoTime();
+         for (int i = 0; i < TIMING_CALLS; i++)
+         {
+            double sig = 1.0 / (1.0 + Math.exp(-(-SAMPLE_LIMIT + i * step)));
+            sum += derivative ? sig * (1.0 - sig) : sig;
+         }
+         elapsed = System.nanoTime() - start;
+         sink += sum;
+      } // for (int rep = 0; rep < 2; rep++)
+      return (double) elapsed / TIMING_CALLS;
+   } // public static double timeExact(boolean derivative)
+
+   /*
+    * Compares a network run and trained with exact sigmoids to the same network using a sigmoid table
+    *
+    * @param filePath   the control file describing the network, its cases and its weights
+    * @param epochs     the number of per-case training epochs to run in each mode
+    * @throws IllegalArgumentException if the network maps its weights or streams its cases, since the report
+    *                                  needs to restore the weights and run every case by index
+    */
+   public static void reportNetwork(String filePath, int epochs) throws IOException
+   {
+      N_Layer network = new N_Layer();
+      network.setConfigParams(filePath);
+      if (network.loadOrRand.equals("map") || network.caseSource.equals("stream"))
+      {
+         throw new IllegalArgumentException("The sigmoid table report needs weights in memory and cases in memory, " +
+                                            "not mapped weights or streamed cases: " + filePath);
+      }
+      network.allocateArray();
+      network.populateArrays();
+      network.allocateTrainArrays();
+
+      SigmoidTable table = network.sigmoidTable;
+      if (table == null)
+      {
+         table = SigmoidTable.DEFAULT;
+      }
+      double[] startWeights = network.weights == null ? null : network.weights.clone();
+      float[] startFloatWeights = network.floatWeights == null ? null : network.floatWeights.clone();
+
+      useTable(network, null);
+      double[][] exactOutputs = runAll(network);
+      double exactStartError = network.evaluateError();
+
+      useTable(network, table);
+      double[][] tableOutputs = runAll(network);
+      double tableStartError = network.evaluateError();
+
+      double maxDiff = 0.0;
+      for (int ii = 0; ii < exactOutputs.length; ii++)
+      {
+         for (int i = 0; i < exactOutputs[ii].length; i++)
+         {
+            maxDiff = Math.max(maxDiff, Math.abs(exactOutputs[ii][i] - tableOutputs[ii][i]));
+         }
+      }
+
+      double[] run = timeBoth(network, table, startWeights, startFloatWeights, 0);
+      double[] train = timeBoth(network, table, startWeights, startFloatWeights, epochs);
+
+      System.out.println("Network " + network.networkConfig + " from " + filePath + ", " + N_Layer.numCases +
+                         " cases, " + network.precision + " precision");
+      System.out.printf("Run all cases: exact %.3f ms, table %.3f ms (median of %d), largest output difference %.3e%n",
+                        run[0], run[1], TIMED_ROUNDS, maxDiff);
+      System.out.printf("Error before training: exact %.9f, table %.9f%n", exactStartError, tableStartError);
+      System.out.printf("Train %d epochs: exact %.3f ms, error %.9f; table %.3f ms, error %.9f (median of %d)%n%n",
+                        epochs, train[0], train[2], train[1], train[3], TIMED_ROUNDS);
+   } // public static void reportNetwork(String filePath, int epochs) throws IOException
+
+   /*
+    * Times running every case, or training from the starting weights for a number of epochs, with exact
+    * sigmoids and with a table. Each is first run WARMUP_ROUNDS times so the JIT has compiled both paths, then
+    * TIMED_ROUNDS times, alternating which of the two goes first in each round, and the median time of each
+    * is taken.
+    *
+    * @param network             the network to time
+    * @param table               the table to compare with the exact sigmoid
+    * @param startWeights        the double precision weights to start each round from, or null
+    * @param startFloatWeights   the single precision weights to start each round from, or null
+    * @param epochs              the number of epochs to train, or 0 to run every case instead
+    * @return                    the median exact and table times in milliseconds, then the error after the
+    *                            exact and table rounds
+    */
+   public static double[] timeBoth(N_Layer network, SigmoidTable table, double[] startWeights,
+                                   float[] startFloatWeights, int epochs)
+   {
+      double[][] times = new double[2][TIMED_ROUNDS];
+      double[] errors = new double[2];
+
+      for (int round = 0; round < WARMUP_ROUNDS + TIMED_ROUNDS; round++)
+      {
+         for (int turn = 0; turn < 2; turn++)
+         {
+            int mode = (round + turn) % 2;
+            useTable(network, mode == 0 ? null : table);
+            if (startWeights != null)
+            {
+               System.arraycopy(startWeights, 0, network.weights, 0, startWeights.length);
+            }
+            if (startFloatWeights != null)
+            {
+               System.arraycopy(startFloatWeights, 0, network.floatWeights, 0, startFloatWeights.length);
+            }
+
+            long start = System.nanoTime();
+            if (epochs == 0)
+            {
+               sink += runAll(network)[0][0];
+            }
+            for (int epoch = 0; epoch < epochs; epoch++)
+            {
+               network.trainCaseEpoch();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            if (round >= WARMUP_ROUNDS)
+            {
+               times[mode][round - WARMUP_ROUNDS] = elapsed / 1e6;
+            }
+            errors[mode] = network.evaluateError();
+         } // for (int turn = 0; turn < 2; turn++)
+      } // for (int round = 0; round < WARMUP_ROUNDS + TIMED_ROUNDS; round++)
+
+      Arrays.sort(times[0]);
+      Arrays.sort(times[1]);
+      return new double[] {times[0][TIMED_ROUNDS / 2], times[1][TIMED_ROUNDS / 2], errors[0], errors[1]};
+   } // public static double[] timeBoth(N_Layer network, SigmoidTable table, double[] startWeights, ...)
+
+   /*
+    * Switches every sigmoid layer of a network between the exact sigmoid and a table
+    *
+    * @param network   the network to change
+    * @param table     the table to use, or null for the exact sigmoid
+    */
+   public static void useTable(N_Layer network, SigmoidTable table)
+   {
+      network.sigmoidTable = table;
+      for (int n = 1; n <= network.numLayers; n++)
+      {
+         String name = network.activationNames[n];
+         if (name.equals("sigmoid") || name.equals("lookupSigmoid"))
+         {
+            network.activationFunctions[n] = table == null ? new Activation.Sigmoid() : new Activation.LookupSigmoid(table);
+         }
+      }
+   } // public static void useTable(N_Layer network, SigmoidTable table)
+
+   /*
+    * Runs every case through a network
+    *
+    * @param network   the network to run
+    * @return          a copy of the outputs of each case
+    */
+   public static double[][] runAll(N_Layer network)
+   {
+      double[][] outputs = new double[N_Layer.numCases][];
+      for (int ii = 0; ii < N_Layer.numCases; ii++)
+      {
+         outputs[ii] = network.run(ii).clone();
+      }
+      return outputs;
+   } // public static double[][] runAll(N_Layer network)
+
+   /*
+    * Prints the function report and then the network report for each control file given, training for the
+    * number of epochs given first (10 by default)
+    */
+   public static void main(String[] args) throws IOException
+   {
+      reportFunctions();
+
+      int epochs = 10;
+      int first = 0;
+      if (args.length > 0 && args[0].matches("\\d+"))
+      {
+         epochs = Integer.parseInt(args[0]);
+         first = 1;
+      }
+      if (args.length == first)
+      {
+         reportNetwork("./controlFileRun.txt", epochs);
+      }
+      for (int i = first; i < args.length; i++)
+      {
+         reportNetwork(args[i], epochs);
+      }
+   } // public static void main(String[] args) throws IOException
+} // public class SigmoidTableReport
@@ -0,0 +1,28 @@
+import java.io.IOException;
+
+/*
+ * Receives the measurements of a training run. Listeners are added to a network's MetricsRecorder and called on
+ * the training thread after each metrics interval, so they should return quickly; anything slow belongs on a
+ * thread of the listener's own.
+ * ----------------------------------
+ * METHODS:
+ *
+ * public void epochFinished(EpochMetrics metrics) throws IOException
+ * public void close() throws IOException
+ */
+public interface TrainingListener
+{
+   /*
+    * Receives the measurements of the iterations since the last call
+    *
+    * @param metrics   the measurements, which the listener may keep
+    */
+   public void epochFinished(EpochMetrics metrics) throws IOException;
+
+   /*
+    * Called once training has finished
+    */
+   public default void close() throws IOException
+   {
+   }
+} // public interface TrainingListener
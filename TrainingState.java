@@ -0,0 +1,168 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+
+/*
+ * The state of a training run besides its weights, saved beside each checkpoint so that training can resume where
+ * it stopped. Steepest descent keeps no moments or other optimizer state beyond the learning factor. The file is
+ * little-endian:
+ *
+ *    int magic                  //MAGIC, the bytes "NLTS" read as a little-endian int
+ *    int version                //VERSION
+ *    int iteration              //The number of training iterations completed
+ *    double learningFactor      //The learning factor
+ *    int numErrors              //The number of errors in the history
+ *    double[] errorHistory      //The error after each iteration
+ *    int randomBytes            //The length of the serialized random number generator, 0 if there is none
+ *    byte[] random              //The serialized generator that shuffles streamed cases
+ * ----------------------------------
+ * VARIABLES:
+ *
+ * int iteration                 //The number of training iterations completed
+ * double learningFactor         //The learning factor
+ * double[] errorHistory         //The error after each iteration, exactly iteration long
+ * byte[] random                 //The serialized shuffling generator, or an empty array
+ *
+ * METHODS:
+ *
+ * public static byte[] saveRandom(Random random)
+ * public static Random loadRandom(byte[] bytes) throws IOException
+ * public void write(File file) throws IOException
+ * public static TrainingState read(File file) throws IOException
+ */
+public class TrainingState
+{
+   public static final int MAGIC = 0x53544C4E;
+   public static final int VERSION = 1;
+
+   public int iteration;
+   public double learningFactor;
+   public double[] errorHistory;
+   public byte[] random;
+
+   /*
+    * Captures the exact state of a random number generator, so that it continues the same sequence once loaded
+    *
+    * @param random   the generator, or null
+    * @return         the serialized generator, or an empty array for null
+    */
+   public static byte[] saveRandom(Random random)
+   {
+      if (random == null)
+      {
+         return new byte[0];
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+      {
+         out.writeObject(random);
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException("Random could not be serialized", e);
+      }
+      return bytes.toByteArray();
+   } // public static byte[] saveRandom(Random random)
+
+   /*
+    * Restores a random number generator captured by saveRandom
+    *
+    * @param bytes   the serialized generator
+    * @return        the generator, or null if none was saved
+    * @throws IOException if the bytes do not hold a serialized Random
+    */
+   public static Random loadRandom(byte[] bytes) throws IOException
+   {
+      if (bytes.length == 0)
+      {
+         return null;
+      }
+      try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+      {
+         return (Random) in.readObject();
+      }
+      catch (ClassNotFoundException | ClassCastException e)
+      {
+         throw new IOException("The saved random number generator could not be restored", e);
+      }
+   } // public static Random loadRandom(byte[] bytes) throws IOException
+
+   /*
+    * Writes the state to a file
+    *
+    * @param file   the file to write
+    */
+   public void write(File file) throws IOException
+   {
+      ByteBuffer content = ByteBuffer.allocate(28 + 8 * errorHistory.length + random.length)
+                                     .order(ByteOrder.LITTLE_ENDIAN);
+      content.putInt(MAGIC).putInt(VERSION).putInt(iteration).putDouble(learningFactor);
+      content.putInt(errorHistory.length);
+      for (int i = 0; i < errorHistory.length; i++)
+      {
+         content.putDouble(errorHistory[i]);
+      }
+      content.putInt(random.length).put(random);
+      content.flip();
+
+      try (RandomAccessFile out = new RandomAccessFile(file, "rw"))
+      {
+         out.setLength(0);
+         FileChannel channel = out.getChannel();
+         while (content.hasRemaining())
+         {
+            channel.write(content);
+         }
+      }
+   } // public void write(File file) throws IOException
+
+   /*
+    * Reads a state written by write
+    *
+    * @param file   the file to read
+    * @return       the state
+    * @throws IOException if the file is not a training state of a supported version or is truncated
+    */
+   public static TrainingState read(File file) throws IOException
+   {
+      ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+      try
+      {
+         if (content.getInt() != MAGIC)
+         {
+            throw new IOException(file + " is not a training state file");
+         }
+         int version = content.getInt();
+         if (version != VERSION)
+         {
+            throw new IOException(file + " has training state version " + version + ", expected " + VERSION);
+         }
+
+         TrainingState state = new TrainingState();
+         state.iteration = content.getInt();
+         state.learningFactor = content.getDouble();
+         state.errorHistory = new double[content.getInt()];
+         for (int i = 0; i < state.errorHistory.length; i++)
+         {
+            state.errorHistory[i] = content.getDouble();
+         }
+         state.random = new byte[content.getInt()];
+         content.get(state.random);
+         return state;
+      } // try
+      catch (BufferUnderflowException | NegativeArraySizeException e)
+      {
+         throw new IOException(file + " is truncated", e);
+      }
+   } // public static TrainingState read(File file) throws IOException
+} // public class TrainingState
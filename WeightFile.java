@@ -0,0 +1,314 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/*
+ * A binary weight file, memory-mapped for reading. All values are little-endian. The header is
+ *
+ *    int magic                  //MAGIC, the bytes "NLWT" read as a little-endian int
+ *    int version                //VERSION
+ *    int dtype                  //DTYPE_FLOAT64 or DTYPE_FLOAT32
+ *    int numLayers              //The number of connectivity layers
+ *    int[] numActivations       //The number of activations in each of the numLayers + 1 layers
+ *    long numWeights            //The number of weights in the payload
+ *    long checksum              //The CRC32 of the payload bytes
+ *    int payloadOffset          //The byte offset of the payload, a multiple of PAYLOAD_ALIGNMENT
+ *
+ * and is followed by zero padding and then the weights, in the flat layout of N_Layer.weights.
+ * ----------------------------------
+ * VARIABLES:
+ *
+ * int version                   //The version of the format the file was written with
+ * int dtype                     //The type of the stored weights
+ * int[] numActivations          //The number of activations in each layer of the network the weights are for
+ * long numWeights               //The number of stored weights
+ * long checksum                 //The CRC32 of the payload stored in the header
+ * int payloadOffset             //The byte offset of the first weight
+ * MappedByteBuffer buffer       //The whole file, mapped read-only, in little-endian order
+ *
+ * METHODS:
+ *
+ * public static boolean isWeightFile(File file) throws IOException
+ * public static WeightFile open(File file) throws IOException
+ * public void checkTopology(int[] expected) throws IOException
+ * public void verifyChecksum() throws IOException
+ * public ByteBuffer payload()
+ * public void read(double[] weights)
+ * public void read(float[] weights)
+ * public static void write(File file, int[] numActivations, double[] weights) throws IOException
+ * public static void write(File file, int[] numActivations, float[] weights) throws IOException
+ * public static void write(File file, int[] numActivations, int dtype, ByteBuffer payload) throws IOException
+ */
+public class WeightFile
+{
+   public static final int MAGIC = 0x54574C4E;
+   public static final int VERSION = 1;
+   public static final int DTYPE_FLOAT64 = 0;
+   public static final int DTYPE_FLOAT32 = 1;
+   public static final int PAYLOAD_ALIGNMENT = 64;
+
+   public int version;
+   public int dtype;
+   public int[] numActivations;
+   public long numWeights;
+   public long checksum;
+   public int payloadOffset;
+   public MappedByteBuffer buffer;
+
+   /*
+    * Tells whether a file starts with the binary weight file magic number, so that text weight files can
+    * still be loaded
+    *
+    * @param file   the file to check
+    * @return       true if the file is a binary weight file
+    */
+   public static boolean isWeightFile(File file) throws IOException
+   {
+      try (RandomAccessFile in = new RandomAccessFile(file, "r"))
+      {
+         if (in.length() < 4)
+         {
+            return false;
+         }
+         return Integer.reverseBytes(in.readInt()) == MAGIC;
+      }
+   } // public static boolean isWeightFile(File file) throws IOException
+
+   /*
+    * Maps a binary weight file and reads its header. The payload itself is not touched, so opening a file
+    * costs a few page faults however many weights it holds.
+    *
+    * @param file   the file to open
+    * @return       the opened file
+    * @throws IOException if the file is not a binary weight file of a supported version, is truncated, or holds
+    *                     a different number of weights than its layer sizes call for
+    */
+   public static WeightFile open(File file) throws IOException
+   {
+      WeightFile weightFile = new WeightFile();
+      try (FileChannel channel = FileChannel.open(file.toPath()))
+      {
+         weightFile.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      ByteBuffer header = weightFile.buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+      if (header.limit() < 16 || header.getInt(0) != MAGIC)
+      {
+         throw new IOException(file + " is not a binary weight file");
+      }
+      weightFile.version = header.getInt(4);
+      if (weightFile.version != VERSION)
+      {
+         throw new IOException(file + " has weight file version " + weightFile.version + ", expected " + VERSION);
+      }
+      weightFile.dtype = header.getInt(8);
+      if (weightFile.dtype != DTYPE_FLOAT64 && weightFile.dtype != DTYPE_FLOAT32)
+      {
+         throw new IOException(file + " has unknown weight type " + weightFile.dtype);
+      }
+
+      int numLayers = header.getInt(12);
+      int position = 16;
+      if (numLayers < 1 || header.limit() < position + 4L * (numLayers + 1L) + 20L)
+      {
+         throw new IOException(file + " has a truncated header");
+      }
+      weightFile.numActivations = new int[numLayers + 1];
+      long topologyWeights = 0;
+      for (int n = 0; n <= numLayers; n++)
+      {
+         weightFile.numActivations[n] = header.getInt(position);
+         position += 4;
+         if (weightFile.numActivations[n] < 1)
+         {
+            throw new IOException(file + " has " + weightFile.numActivations[n] + " activations in layer " + n);
+         }
+         if (n > 0)
+         {
+            topologyWeights += (long) weightFile.numActivations[n - 1] * weightFile.numActivations[n];
+            if (topologyWeights > header.limit())
+            {
+               throw new IOException(file + " is truncated: its layer sizes call for more weights than it holds");
+            }
+         } // if (n > 0)
+      } // for (int n = 0; n <= numLayers; n++)
+      weightFile.numWeights = header.getLong(position);
+      weightFile.checksum = header.getLong(position + 8);
+      weightFile.payloadOffset = header.getInt(position + 16);
+
+      if (weightFile.numWeights != topologyWeights)
+      {
+         throw new IOException(file + " holds " + weightFile.numWeights + " weights, but its " +
+                               Arrays.toString(weightFile.numActivations) + " network has " + topologyWeights);
+      }
+      long payloadBytes = weightFile.numWeights * (weightFile.dtype == DTYPE_FLOAT64 ? 8 : 4);
+      if (weightFile.payloadOffset < position + 20 || weightFile.payloadOffset + payloadBytes > header.limit())
+      {
+         throw new IOException(file + " is truncated: " + weightFile.numWeights + " weights do not fit");
+      }
+      return weightFile;
+   } // public static WeightFile open(File file) throws IOException
+
+   /*
+    * Checks that the weights in the file are for a network with the given layer sizes
+    *
+    * @param expected   the number of activations in each layer of the network
+    * @throws IOException if the topologies differ
+    */
+   public void checkTopology(int[] expected) throws IOException
+   {
+      if (!Arrays.equals(numActivations, expected))
+      {
+         throw new IOException("The weight file is for a " + Arrays.toString(numActivations) +
+                               " network, but the network is " + Arrays.toString(expected));
+      }
+   } // public void checkTopology(int[] expected) throws IOException
+
+   /*
+    * Checks the payload against the CRC32 in the header. This reads every page of the payload.
+    *
+    * @throws IOException if the checksums differ
+    */
+   public void verifyChecksum() throws IOException
+   {
+      CRC32 crc = new CRC32();
+      crc.update(payload());
+      if (crc.getValue() != checksum)
+      {
+         throw new IOException("The weight file checksum is " + Long.toHexString(crc.getValue()) + ", expected " +
+                               Long.toHexString(checksum));
+      }
+   } // public void verifyChecksum() throws IOException
+
+   /*
+    * Gives a little-endian view of the payload bytes, sharing the mapped memory
+    *
+    * @return   a buffer spanning exactly the stored weights
+    */
+   public ByteBuffer payload()
+   {
+      int payloadBytes = (int) (numWeights * (dtype == DTYPE_FLOAT64 ? 8 : 4));
+      return buffer.duplicate().position(payloadOffset).limit(payloadOffset + payloadBytes).slice()
+                   .order(ByteOrder.LITTLE_ENDIAN);
+   } // public ByteBuffer payload()
+
+   /*
+    * Copies the stored weights into a double precision array, widening single precision weights
+    *
+    * @param weights   receives the weights, and must hold numWeights of them
+    */
+   public void read(double[] weights)
+   {
+      if (dtype == DTYPE_FLOAT64)
+      {
+         payload().asDoubleBuffer().get(weights, 0, (int) numWeights);
+      }
+      else
+      {
+         FloatBuffer stored = payload().asFloatBuffer();
+         for (int w = 0; w < numWeights; w++)
+         {
+            weights[w] = stored.get(w);
+         }
+      }
+   } // public void read(double[] weights)
+
+   /*
+    * Copies the stored weights into a single precision array, rounding double precision weights
+    *
+    * @param weights   receives the weights, and must hold numWeights of them
+    */
+   public void read(float[] weights)
+   {
+      if (dtype == DTYPE_FLOAT32)
+      {
+         payload().asFloatBuffer().get(weights, 0, (int) numWeights);
+      }
+      else
+      {
+         DoubleBuffer stored = payload().asDoubleBuffer();
+         for (int w = 0; w < numWeights; w++)
+         {
+            weights[w] = (float) stored.get(w);
+         }
+      }
+   } // public void read(float[] weights)
+
+   /*
+    * Writes double precision weights to a binary weight file
+    *
+    * @param file             the file to write
+    * @param numActivations   the number of activations in each layer of the network
+    * @param weights          the weights in the flat layout of N_Layer.weights
+    */
+   public static void write(File file, int[] numActivations, double[] weights) throws IOException
+   {
+      ByteBuffer payload = ByteBuffer.allocate(weights.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+      payload.asDoubleBuffer().put(weights);
+      write(file, numActivations, DTYPE_FLOAT64, payload);
+   }
+
+   /*
+    * Writes single precision weights to a binary weight file
+    *
+    * @param file             the file to write
+    * @param numActivations   the number of activations in each layer of the network
+    * @param weights          the weights in the flat layout of N_Layer.weights
+    */
+   public static void write(File file, int[] numActivations, float[] weights) throws IOException
+   {
+      ByteBuffer payload = ByteBuffer.allocate(weights.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+      payload.asFloatBuffer().put(weights);
+      write(file, numActivations, DTYPE_FLOAT32, payload);
+   }
+
+   /*
+    * Writes a header and a little-endian payload to a binary weight file
+    *
+    * @param file             the file to write
+    * @param numActivations   the number of activations in each layer of the network
+    * @param dtype            the type of the weights in the payload
+    * @param payload          the weight bytes, from position 0 to the limit
+    */
+   public static void write(File file, int[] numActivations, int dtype, ByteBuffer payload) throws IOException
+   {
+      int width = dtype == DTYPE_FLOAT64 ? 8 : 4;
+      int headerBytes = 16 + 4 * numActivations.length + 20;
+      int payloadOffset = (headerBytes + PAYLOAD_ALIGNMENT - 1) / PAYLOAD_ALIGNMENT * PAYLOAD_ALIGNMENT;
+
+      CRC32 crc = new CRC32();
+      crc.update(payload.duplicate());
+
+      ByteBuffer header = ByteBuffer.allocate(payloadOffset).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(MAGIC).putInt(VERSION).putInt(dtype).putInt(numActivations.length - 1);
+      for (int n = 0; n < numActivations.length; n++)
+      {
+         header.putInt(numActivations[n]);
+      }
+      header.putLong(payload.remaining() / width).putLong(crc.getValue()).putInt(payloadOffset);
+      header.position(0);
+
+      try (RandomAccessFile out = new RandomAccessFile(file, "rw"))
+      {
+         out.setLength(0);
+         FileChannel channel = out.getChannel();
+         ByteBuffer content = payload.duplicate();
+         while (header.hasRemaining())
+         {
+            channel.write(header);
+         }
+         while (content.hasRemaining())
+         {
+            channel.write(content);
+         }
+      } // try (RandomAccessFile out = new RandomAccessFile(file, "rw"))
+   } // public static void write(File file, int[] numActivations, int dtype, ByteBuffer payload) throws IOException
+} // public class WeightFile
@@ -0,0 +1,169 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/*
+ * Fills a network's weights with random values from a seed, so that the same seed always gives the same weights.
+ * Each connectivity layer is initialized with its own scheme, named in the control file:
+ *    uniform   uniformly between the low and high of the weight range
+ *    xavier    uniformly within +-sqrt(6 / (fanIn + fanOut)), Glorot's scheme for sigmoid and tanh layers
+ *    he        uniformly within +-sqrt(6 / fanIn), He's scheme for relu layers
+ *
+ * The weights are split into chunks of CHUNK_WEIGHTS. Each chunk gets its own generator, split from the seed's
+ * generator in chunk order before any are filled, so the chunks can be filled in parallel on the common fork/join
+ * pool and still give the same weights whatever the number of threads.
+ * ----------------------------------
+ * METHODS:
+ *
+ * public static void checkScheme(String scheme)
+ * public static double scale(String scheme, int fanIn, int fanOut)
+ * public static void initialize(double[] weights, float[] floatWeights, int[] weightOffsets, int[] numActivations,
+ *                               String[] schemes, double[] weightRange, long seed)
+ * public static void fillChunk(double[] weights, float[] floatWeights, int start, int end, double low, double high,
+ *                              SplittableRandom random)
+ */
+public class WeightInitializer
+{
+   /*
+    * The number of weights filled by one generator, and the smallest piece of work handed to another thread
+    */
+   public static final int CHUNK_WEIGHTS = 1 << 16;
+
+   /*
+    * The names of the schemes
+    */
+   public static final String[] SCHEMES = {"uniform", "xavier", "he"};
+
+   /*
+    * Checks that a scheme named in the control file exists
+    *
+    * @param scheme   the name of the scheme
+    * @throws IllegalArgumentException if the scheme is unknown
+    */
+   public static void checkScheme(String scheme)
+   {
+      for (String known : SCHEMES)
+      {
+         if (known.equals(scheme))
+         {
+            return;
+         }
+      }
+      throw new IllegalArgumentException("Unknown weight initialization " + scheme);
+   } // public static void checkScheme(String scheme)
+
+   /*
+    * Finds the half-width of the range a scheme draws a layer's weights from
+    *
+    * @param scheme   "xavier" or "he"
+    * @param fanIn    the number of activations feeding the layer
+    * @param fanOut   the number of activations the layer feeds
+    * @return         the largest magnitude of a weight
+    * @throws IllegalArgumentException if the scheme is unknown
+    */
+   public static double scale(String scheme, int fanIn, int fanOut)
+   {
+      if (scheme.equals("xavier"))
+      {
+         return Math.sqrt(6.0 / (fanIn + fanOut));
+      }
+      else if (scheme.equals("he"))
+      {
+         return Math.sqrt(6.0 / fanIn);
+      }
+      throw new IllegalArgumentException("Unknown weight initialization " + scheme);
+   } // public static double scale(String scheme, int fanIn, int fanOut)
+
+   /*
+    * Fills the weights of every layer
+    *
+    * @param weights          the double precision weights, or null when they are stored in single precision
+    * @param floatWeights     the single precision weights, or null when they are stored in double precision
+    * @param weightOffsets    the index at which each connectivity layer's block begins, followed by the total
+    * @param numActivations   the number of activations in each layer
+    * @param schemes          the scheme of each connectivity layer
+    * @param weightRange      the low and high weights of the uniform scheme
+    * @param seed             the seed the weights are drawn from
+    */
+   public static void initialize(double[] weights, float[] floatWeights, int[] weightOffsets, int[] numActivations,
+                                 String[] schemes, double[] weightRange, long seed)
+   {
+      SplittableRandom root = new SplittableRandom(seed);
+      int numLayers = numActivations.length - 1;
+      int numChunks = 0;
+      for (int n = 0; n < numLayers; n++)
+      {
+         numChunks += (weightOffsets[n + 1] - weightOffsets[n] + CHUNK_WEIGHTS - 1) / CHUNK_WEIGHTS;
+      }
+
+      ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[numChunks];
+      int chunk = 0;
+      for (int n = 0; n < numLayers; n++)
+      {
+         double low = weightRange[0];
+         double high = weightRange[1];
+         if (!schemes[n].equals("uniform"))
+         {
+            high = scale(schemes[n], numActivations[n], numActivations[n + 1]);
+            low = -high;
+         }
+
+         for (int start = weightOffsets[n]; start < weightOffsets[n + 1]; start += CHUNK_WEIGHTS)
+         {
+            int end = Math.min(start + CHUNK_WEIGHTS, weightOffsets[n + 1]);
+            SplittableRandom random = root.split();
+            if (numChunks == 1)
+            {
+               fillChunk(weights, floatWeights, start, end, low, high, random);
+            }
+            else
+            {
+               final int first = start;
+               final double min = low;
+               final double max = high;
+               tasks[chunk] = ForkJoinPool.commonPool().submit(() ->
+               {
+                  fillChunk(weights, floatWeights, first, end, min, max, random);
+               });
+            }
+            chunk++;
+         } // for (int start = weightOffsets[n]; start < weightOffsets[n + 1]; start += CHUNK_WEIGHTS)
+      } // for (int n = 0; n < numLayers; n++)
+
+      for (int c = 0; c < numChunks; c++)
+      {
+         if (tasks[c] != null)
+         {
+            tasks[c].join();
+         }
+      }
+   } // public static void initialize(double[] weights, float[] floatWeights, int[] weightOffsets, ...)
+
+   /*
+    * Fills one chunk of weights uniformly within a range
+    *
+    * @param weights        the double precision weights, or null
+    * @param floatWeights   the single precision weights, or null
+    * @param start          the index of the first weight of the chunk
+    * @param end            the index just past the last weight of the chunk
+    * @param low            the lowest weight
+    * @param high           the highest weight
+    * @param random         the chunk's generator
+    */
+   public static void fillChunk(double[] weights, float[] floatWeights, int start, int end, double low, double high,
+                                SplittableRandom random)
+   {
+      for (int w = start; w < end; w++)
+      {
+         double value = random.nextDouble() * (high - low) + low;
+         if (weights != null)
+         {
+            weights[w] = value;
+         }
+         else
+         {
+            floatWeights[w] = (float) value;
+         }
+      }
+   } // public static void fillChunk(double[] weights, float[] floatWeights, int start, int end, ...)
+} // public class WeightInitializer
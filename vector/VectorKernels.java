@@ -0,0 +1,191 @@
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Implements the Kernels operations with the incubating JDK Vector API, working on as many doubles at once as
+ * the CPU's widest vector registers hold. Values left over past the last full vector are handled one at a time.
+ * Sums are combined lane by lane and multiply-adds are fused, so results can differ from ScalarKernels in the
+ * last bits. The mixed precision operations widen every value to double, which the Vector API cannot do without
+ * reshaping vectors, so they are inherited from ScalarKernels.
+ *
+ * Weights mapped from a weight file are copied from their ByteBuffer into a small per-thread array, CHUNK_DOUBLES
+ * at a time, and vectorized from there.
+ *
+ * This file needs the jdk.incubator.vector module, so it is kept apart from the other sources and compiled with
+ *    javac --add-modules jdk.incubator.vector -d . vector/VectorKernels.java
+ * and the network is then run with
+ *    java --add-modules jdk.incubator.vector N_Layer <controlFile>
+ * N_Layer falls back to ScalarKernels when either step was skipped.
+ *
+ * Only the array loads and stores, fma, lanewise and reduceLanes are used. They have stayed the same in every
+ * release of the incubating module, from JDK 16 on. The ByteBuffer and MemorySegment loads have not: fromByteBuffer
+ * was removed in JDK 20. It is built and run on JDK 17 and JDK 21.
+ */
+public class VectorKernels extends ScalarKernels implements Kernels
+{
+   private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+   private static final DoubleVector ONES = DoubleVector.broadcast(SPECIES, 1.0);
+   private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+   private static final FloatVector FLOAT_ONES = FloatVector.broadcast(FLOAT_SPECIES, 1.0f);
+
+   /*
+    * The number of mapped weights copied into an array at a time, 4 KB, which stays in the L1 cache
+    */
+   public static final int CHUNK_DOUBLES = 512;
+
+   /*
+    * The array each thread copies mapped weights into, with a double view of the last payload it read, kept so
+    * that no view is created for every row
+    */
+   private static class MappedChunk
+   {
+      ByteBuffer source;
+      DoubleBuffer view;
+      double[] values = new double[CHUNK_DOUBLES];
+   }
+
+   private static final ThreadLocal<MappedChunk> CHUNKS = ThreadLocal.withInitial(MappedChunk::new);
+
+   public double dot(double[] x, int xOffset, double[] y, int yOffset, int length)
+   {
+      DoubleVector sums = DoubleVector.zero(SPECIES);
+      int bound = SPECIES.loopBound(length);
+      int i = 0;
+      for (; i < bound; i += SPECIES.length())
+      {
+         DoubleVector xs = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+         DoubleVector ys = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+         sums = xs.fma(ys, sums);
+      }
+
+      double sum = sums.reduceLanes(VectorOperators.ADD);
+      for (; i < length; i++)
+      {
+         sum += x[xOffset + i] * y[yOffset + i];
+      }
+      return sum;
+   } // public double dot(double[] x, int xOffset, double[] y, int yOffset, int length)
+
+   public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length)
+   {
+      DoubleVector as = DoubleVector.broadcast(SPECIES, a);
+      int bound = SPECIES.loopBound(length);
+      int i = 0;
+      for (; i < bound; i += SPECIES.length())
+      {
+         DoubleVector xs = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+         DoubleVector ys = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+         xs.fma(as, ys).intoArray(y, yOffset + i);
+      }
+
+      for (; i < length; i++)
+      {
+         y[yOffset + i] += a * x[xOffset + i];
+      }
+   } // public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length)
+
+   public void sigmoid(double[] x, double[] y, int length)
+   {
+      int bound = SPECIES.loopBound(length);
+      int i = 0;
+      for (; i < bound; i += SPECIES.length())
+      {
+         DoubleVector xs = DoubleVector.fromArray(SPECIES, x, i);
+         ONES.div(xs.neg().lanewise(VectorOperators.EXP).add(1.0)).intoArray(y, i);
+      }
+
+      for (; i < length; i++)
+      {
+         y[i] = 1.0 / (1.0 + Math.exp(-x[i]));
+      }
+   } // public void sigmoid(double[] x, double[] y, int length)
+
+   public float dot(float[] x, int xOffset, float[] y, int yOffset, int length)
+   {
+      FloatVector sums = FloatVector.zero(FLOAT_SPECIES);
+      int bound = FLOAT_SPECIES.loopBound(length);
+      int i = 0;
+      for (; i < bound; i += FLOAT_SPECIES.length())
+      {
+         FloatVector xs = FloatVector.fromArray(FLOAT_SPECIES, x, xOffset + i);
+         FloatVector ys = FloatVector.fromArray(FLOAT_SPECIES, y, yOffset + i);
+         sums = xs.fma(ys, sums);
+      }
+
+      float sum = sums.reduceLanes(VectorOperators.ADD);
+      for (; i < length; i++)
+      {
+         sum += x[xOffset + i] * y[yOffset + i];
+      }
+      return sum;
+   } // public float dot(float[] x, int xOffset, float[] y, int yOffset, int length)
+
+   public void axpy(float a, float[] x, int xOffset, float[] y, int yOffset, int length)
+   {
+      FloatVector as = FloatVector.broadcast(FLOAT_SPECIES, a);
+      int bound = FLOAT_SPECIES.loopBound(length);
+      int i = 0;
+      for (; i < bound; i += FLOAT_SPECIES.length())
+      {
+         FloatVector xs = FloatVector.fromArray(FLOAT_SPECIES, x, xOffset + i);
+         FloatVector ys = FloatVector.fromArray(FLOAT_SPECIES, y, yOffset + i);
+         xs.fma(as, ys).intoArray(y, yOffset + i);
+      }
+
+      for (; i < length; i++)
+      {
+         y[yOffset + i] += a * x[xOffset + i];
+      }
+   } // public void axpy(float a, float[] x, int xOffset, float[] y, int yOffset, int length)
+
+   public void sigmoid(float[] x, float[] y, int length)
+   {
+      int bound = FLOAT_SPECIES.loopBound(length);
+      int i = 0;
+      for (; i < bound; i += FLOAT_SPECIES.length())
+      {
+         FloatVector xs = FloatVector.fromArray(FLOAT_SPECIES, x, i);
+         FLOAT_ONES.div(xs.neg().lanewise(VectorOperators.EXP).add(1.0f)).intoArray(y, i);
+      }
+
+      for (; i < length; i++)
+      {
+         y[i] = (float) (1.0 / (1.0 + Math.exp(-x[i])));
+      }
+   } // public void sigmoid(float[] x, float[] y, int length)
+
+   public void axpy(double a, ByteBuffer x, int xIndex, double[] y, int yOffset, int length)
+   {
+      MappedChunk chunk = CHUNKS.get();
+      if (chunk.source != x)
+      {
+         chunk.source = x;
+         chunk.view = x.asDoubleBuffer();
+      }
+      double[] values = chunk.values;
+      DoubleVector as = DoubleVector.broadcast(SPECIES, a);
+
+      for (int start = 0; start < length; start += CHUNK_DOUBLES)
+      {
+         int count = Math.min(CHUNK_DOUBLES, length - start);
+         chunk.view.get(xIndex + start, values, 0, count);
+         int bound = SPECIES.loopBound(count);
+         int i = 0;
+         for (; i < bound; i += SPECIES.length())
+         {
+            DoubleVector xs = DoubleVector.fromArray(SPECIES, values, i);
+            DoubleVector ys = DoubleVector.fromArray(SPECIES, y, yOffset + start + i);
+            xs.fma(as, ys).intoArray(y, yOffset + start + i);
+         }
+
+         for (; i < count; i++)
+         {
+            y[yOffset + start + i] += a * values[i];
+         }
+      } // for (int start = 0; start < length; start += CHUNK_DOUBLES)
+   } // public void axpy(double a, ByteBuffer x, int xIndex, double[] y, int yOffset, int length)
+} // public class VectorKernels